@@ -18,25 +18,38 @@ package io.jmix.awsfs;
 
 import com.google.common.base.Strings;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.jmix.core.filestore.FileRef;
 import io.jmix.core.filestore.FileStorage;
 import io.jmix.core.filestore.FileStorageException;
 import io.jmix.core.util.Preconditions;
 import io.jmix.core.util.UuidProvider;
-import java.io.BufferedInputStream;
+import jakarta.annotation.PreDestroy;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.URI;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,6 +64,7 @@ import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
 import software.amazon.awssdk.core.internal.util.Mimetype;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.core.sync.ResponseTransformer;
@@ -63,6 +77,7 @@ import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
 import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Exception;
 import software.amazon.awssdk.services.s3.model.S3Object;
 import software.amazon.awssdk.services.s3.model.UploadPartRequest;
 import software.amazon.awssdk.services.s3.model.UploadPartResponse;
@@ -72,6 +87,7 @@ public class AwsFileStorage implements FileStorage {
 
     private static final Logger log = LoggerFactory.getLogger(AwsFileStorage.class);
     private static final String DEFAULT_STORAGE_NAME = "s3";
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
 
     protected String storageName;
 
@@ -88,8 +104,16 @@ public class AwsFileStorage implements FileStorage {
     protected String endpointUrl;
     protected boolean usePathStyleBucketAddressing;
 
+    protected int maxPartsInFlight = 4;
+    protected int partUploadAttempts = 3;
+
     protected AtomicReference<S3Client> s3ClientReference = new AtomicReference<>();
 
+    protected final Queue<byte[]> bufferPool = new ConcurrentLinkedQueue<>();
+
+    // resized to maxPartsInFlight before use, see getUploadExecutor()
+    protected final ThreadPoolExecutor uploadExecutor = createUploadExecutor(maxPartsInFlight);
+
     public AwsFileStorage() {
         this(DEFAULT_STORAGE_NAME);
     }
@@ -127,6 +151,8 @@ public class AwsFileStorage implements FileStorage {
             this.chunkSize = properties.getChunkSize();
             this.endpointUrl = properties.getEndpointUrl();
             this.usePathStyleBucketAddressing = properties.getUsePathStyleBucketAddressing();
+            this.maxPartsInFlight = properties.getMaxPartsInFlight();
+            this.partUploadAttempts = properties.getPartUploadAttempts();
         }
     }
 
@@ -155,6 +181,43 @@ public class AwsFileStorage implements FileStorage {
         s3ClientReference.set(s3ClientBuilder.build());
     }
 
+    protected ThreadPoolExecutor createUploadExecutor(int size) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("AwsFileStorageUploader-%d")
+                        .setDaemon(true)
+                        .build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Returns the executor of part uploads with {@code maxPartsInFlight} threads. Parts of concurrently saved files
+     * wait in the queue of the executor when all threads are busy.
+     */
+    protected ExecutorService getUploadExecutor() {
+        int size = Math.max(maxPartsInFlight, 1);
+        if (uploadExecutor.getMaximumPoolSize() != size) {
+            synchronized (uploadExecutor) {
+                // the core size must never exceed the maximum size
+                if (size > uploadExecutor.getMaximumPoolSize()) {
+                    uploadExecutor.setMaximumPoolSize(size);
+                    uploadExecutor.setCorePoolSize(size);
+                } else if (size < uploadExecutor.getMaximumPoolSize()) {
+                    uploadExecutor.setCorePoolSize(size);
+                    uploadExecutor.setMaximumPoolSize(size);
+                }
+            }
+        }
+        return uploadExecutor;
+    }
+
+    @PreDestroy
+    protected void shutdown() {
+        uploadExecutor.shutdownNow();
+    }
+
     @Override
     public String getStorageName() {
         return storageName;
@@ -185,6 +248,14 @@ public class AwsFileStorage implements FileStorage {
         }
     }
 
+    /**
+     * Saves the stream as a single object if it is smaller than the chunk size, otherwise as a multipart upload.
+     * <p>
+     * Parts of a multipart upload are read into pooled buffers and uploaded concurrently, at most
+     * {@code maxPartsInFlight} parts at a time. A part failed with a retryable error is retried up to
+     * {@code partUploadAttempts} times; if it still fails, or the upload fails for any other reason, the multipart
+     * upload is aborted so that S3 does not keep the uploaded parts.
+     */
     @Override
     public FileRef saveStream(String fileName, InputStream inputStream, Map<String, Object> parameters) {
         String fileKey = createFileKey(fileName);
@@ -194,56 +265,200 @@ public class AwsFileStorage implements FileStorage {
         Map<String, String> fileRefParameters = Maps.toMap(parameters.keySet(), key -> parameters.get(key).toString());
         FileRef fileRef = new FileRef(getStorageName(), fileKey, fileName, fileRefParameters);
 
-        try (BufferedInputStream bos = new BufferedInputStream(inputStream, s3ChunkSizeBytes)) {
-            byte[] chunkBytes = new byte[s3ChunkSizeBytes];
-            int nBytes = bos.read(chunkBytes);
-            S3Client s3Client = s3ClientReference.get();
+        S3Client s3Client = s3ClientReference.get();
+        byte[] firstChunk = acquireBuffer(s3ChunkSizeBytes);
+        String uploadId = null;
+        try (inputStream) {
+            int nBytes = IOUtils.read(inputStream, firstChunk);
             if (nBytes < s3ChunkSizeBytes) {
                 s3Client.putObject(objectBuilder -> objectBuilder
                         .bucket(bucket)
                         .key(fileKey)
-                        .build(), fromBytes(chunkBytes, nBytes));
+                        .build(), fromBytes(firstChunk, nBytes));
+                releaseBuffer(firstChunk);
                 return fileRef;
             }
 
             CreateMultipartUploadResponse response = s3Client.createMultipartUpload(uploadBuilder -> uploadBuilder
                     .bucket(bucket)
                     .key(fileKey));
+            uploadId = response.uploadId();
 
-            List<CompletedPart> completedParts = new ArrayList<>();
-            UploadPartRequest.Builder partBuilder = UploadPartRequest.builder()
-                    .bucket(bucket)
-                    .key(fileKey)
-                    .uploadId(response.uploadId());
-            for (int partNumber = 1; 0 < nBytes; partNumber++) {
-                UploadPartResponse partResponse = s3Client.uploadPart(partBuilder
-                        .partNumber(partNumber)
-                        .build(), fromBytes(chunkBytes, nBytes));
-                CompletedPart completedPart = CompletedPart.builder()
-                        .partNumber(partNumber)
-                        .eTag(partResponse.eTag())
-                        .build();
-                completedParts.add(completedPart);
-                nBytes = bos.read(chunkBytes);
-            }
+            List<CompletedPart> completedParts = uploadParts(s3Client, bucket, fileKey, uploadId,
+                    inputStream, firstChunk, nBytes);
 
+            String completedUploadId = uploadId;
             s3Client.completeMultipartUpload(completeBuilder -> completeBuilder
                     .bucket(bucket)
                     .key(fileKey)
-                    .uploadId(response.uploadId())
+                    .uploadId(completedUploadId)
                     .multipartUpload(multipartBuilder -> multipartBuilder.parts(completedParts)));
             return fileRef;
-        } catch (IOException | SdkException e) {
+        } catch (IOException | RuntimeException e) {
             log.error("Error saving file to S3 storage", e);
+            if (uploadId != null) {
+                abortMultipartUpload(s3Client, bucket, fileKey, uploadId);
+            }
             String message = String.format("Could not save file %s.", fileName);
             throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, message);
         }
     }
 
+    /**
+     * Reads the rest of the stream chunk by chunk and uploads the chunks as parts of the multipart upload.
+     * Reading of the next chunk overlaps with uploading of the previous ones. Takes ownership of the first chunk.
+     * If the upload fails, returns only after the parts in flight are completed or cancelled, so that
+     * the multipart upload can be aborted.
+     *
+     * @return completed parts ordered by part number
+     */
+    protected List<CompletedPart> uploadParts(S3Client s3Client, String bucket, String fileKey, String uploadId,
+                                              InputStream inputStream, byte[] firstChunk, int firstChunkLength)
+            throws IOException {
+        Semaphore partsInFlight = new Semaphore(Math.max(maxPartsInFlight, 1));
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+        UploadPartRequest.Builder partBuilder = UploadPartRequest.builder()
+                .bucket(bucket)
+                .key(fileKey)
+                .uploadId(uploadId);
+        ExecutorService executor = getUploadExecutor();
+
+        byte[] chunk = firstChunk;
+        int nBytes = firstChunkLength;
+        boolean uploaded = false;
+        try {
+            for (int partNumber = 1; 0 < nBytes && failure.get() == null; partNumber++) {
+                partsInFlight.acquire();
+
+                byte[] partBytes = chunk;
+                int partLength = nBytes;
+                UploadPartRequest partRequest = partBuilder.partNumber(partNumber).build();
+                chunk = null;
+                parts.add(CompletableFuture
+                        .supplyAsync(() -> {
+                            if (cancelled.get()) {
+                                throw new CancellationException("Upload of " + fileKey + " is aborted");
+                            }
+                            return uploadPart(s3Client, partRequest, partBytes, partLength);
+                        }, executor)
+                        .whenComplete((completedPart, throwable) -> {
+                            if (throwable != null) {
+                                failure.compareAndSet(null, throwable);
+                            }
+                            releaseBuffer(partBytes);
+                            partsInFlight.release();
+                        }));
+
+                chunk = acquireBuffer(partBytes.length);
+                nBytes = IOUtils.read(inputStream, chunk);
+            }
+
+            try {
+                CompletableFuture.allOf(parts.toArray(new CompletableFuture[0])).join();
+            } catch (CompletionException e) {
+                Throwable cause = failure.get() != null ? failure.get() : e;
+                if (cause instanceof CompletionException && cause.getCause() != null) {
+                    cause = cause.getCause();
+                }
+                if (cause instanceof SdkException) {
+                    throw (SdkException) cause;
+                }
+                throw new IOException("Part upload failed", cause);
+            }
+            uploaded = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for part upload");
+        } finally {
+            if (chunk != null) {
+                releaseBuffer(chunk);
+            }
+            if (!uploaded) {
+                // queued parts are skipped, running ones are waited for as they would recreate aborted parts
+                cancelled.set(true);
+                awaitParts(parts);
+            }
+        }
+        return parts.stream()
+                .map(CompletableFuture::join)
+                .collect(Collectors.toList());
+    }
+
+    protected void awaitParts(List<CompletableFuture<CompletedPart>> parts) {
+        CompletableFuture.allOf(parts.toArray(new CompletableFuture[0]))
+                .handle((result, throwable) -> null)
+                .join();
+    }
+
+    protected CompletedPart uploadPart(S3Client s3Client, UploadPartRequest partRequest, byte[] bytes, int length) {
+        int attempts = Math.max(partUploadAttempts, 1);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                UploadPartResponse partResponse = s3Client.uploadPart(partRequest, fromBytes(bytes, length));
+                return CompletedPart.builder()
+                        .partNumber(partRequest.partNumber())
+                        .eTag(partResponse.eTag())
+                        .build();
+            } catch (SdkException e) {
+                if (attempt >= attempts || !isRetryable(e)) {
+                    throw e;
+                }
+                log.warn("Failed to upload part {} of {}, attempt {} of {}: {}",
+                        partRequest.partNumber(), partRequest.key(), attempt, attempts, e.toString());
+            }
+        }
+    }
+
+    /**
+     * Client errors reported by S3, such as access denied or a missing upload, fail the same way on retry.
+     * Throttling, request timeouts, server errors and errors without a response may succeed.
+     */
+    protected boolean isRetryable(SdkException e) {
+        if (e instanceof SdkServiceException) {
+            int statusCode = ((SdkServiceException) e).statusCode();
+            return statusCode >= 500 || statusCode == 408 || statusCode == 429 || e.retryable();
+        }
+        return true;
+    }
+
+    protected void abortMultipartUpload(S3Client s3Client, String bucket, String fileKey, String uploadId) {
+        try {
+            s3Client.abortMultipartUpload(abortBuilder -> abortBuilder
+                    .bucket(bucket)
+                    .key(fileKey)
+                    .uploadId(uploadId));
+        } catch (SdkException e) {
+            log.warn("Unable to abort multipart upload of {}", fileKey, e);
+        }
+    }
+
+    protected byte[] acquireBuffer(int size) {
+        byte[] buffer;
+        while ((buffer = bufferPool.poll()) != null) {
+            // the chunk size may have been changed since the buffer was pooled
+            if (buffer.length == size) {
+                return buffer;
+            }
+        }
+        return new byte[size];
+    }
+
+    protected void releaseBuffer(byte[] buffer) {
+        if (buffer.length == chunkSize * 1024 && bufferPool.size() < Math.max(maxPartsInFlight, 1)) {
+            bufferPool.offer(buffer);
+        }
+    }
+
+    /**
+     * Creates a request body which reads the buffer without copying it. The buffer must not be reused
+     * until the request is completed.
+     */
     protected RequestBody fromBytes(byte[] buffer, int length) {
-        length = Math.max(0, length);
-        byte[] bytes = Arrays.copyOf(buffer, length);
-        return RequestBody.fromContentProvider(() -> new ByteArrayInputStream(bytes), length, Mimetype.MIMETYPE_OCTET_STREAM);
+        int bodyLength = Math.max(0, length);
+        return RequestBody.fromContentProvider(() -> new ByteArrayInputStream(buffer, 0, bodyLength),
+                bodyLength, Mimetype.MIMETYPE_OCTET_STREAM);
     }
 
     @Override
@@ -264,6 +479,43 @@ public class AwsFileStorage implements FileStorage {
         return is;
     }
 
+    /**
+     * Loads the range of the file with an S3 ranged GET request.
+     */
+    @Override
+    public InputStream openStream(FileRef reference, long offset, long length) {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Invalid range: offset=" + offset + ", length=" + length);
+        }
+        if (length==0) {
+            return InputStream.nullInputStream();
+        }
+        String range = length > Long.MAX_VALUE - offset
+                ? String.format("bytes=%d-", offset)
+                : String.format("bytes=%d-%d", offset, offset + length - 1);
+        try {
+            S3Client s3Client = s3ClientReference.get();
+            GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+                    .bucket(bucket)
+                    .key(reference.getPath())
+                    .range(range)
+                    .build();
+            return s3Client.getObject(getObjectRequest, ResponseTransformer.toInputStream());
+        } catch (S3Exception e) {
+            if (e.statusCode()==HTTP_RANGE_NOT_SATISFIABLE) {
+                // the range starts after the end of file
+                return InputStream.nullInputStream();
+            }
+            log.error("Error loading file from S3 storage", e);
+            String message = String.format("Could not load file %s.", reference.getFileName());
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, message);
+        } catch (SdkException e) {
+            log.error("Error loading file from S3 storage", e);
+            String message = String.format("Could not load file %s.", reference.getFileName());
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, message);
+        }
+    }
+
     @Override
     public void removeFile(FileRef reference) {
         try {
@@ -322,4 +574,12 @@ public class AwsFileStorage implements FileStorage {
     public void setUsePathStyleBucketAddressing(boolean usePathStyleBucketAddressing) {
         this.usePathStyleBucketAddressing = usePathStyleBucketAddressing;
     }
+
+    public void setMaxPartsInFlight(int maxPartsInFlight) {
+        this.maxPartsInFlight = maxPartsInFlight;
+    }
+
+    public void setPartUploadAttempts(int partUploadAttempts) {
+        this.partUploadAttempts = partUploadAttempts;
+    }
 }
@@ -1,5 +1,6 @@
 package io.jmix.awsfs;
 
+import io.jmix.core.filestore.CachingFileStorage;
 import io.jmix.core.filestore.FileStorage;
 import io.jmix.core.filestore.FileStorageLocator;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,7 +19,7 @@ public class AwsFileStorageManagementFacade {
 
     @ManagedOperation(description = "Refresh Amazon S3 file storage client")
     public String refreshS3Client() {
-        FileStorage fileStorage = fileStorageLocator.getDefault();
+        FileStorage fileStorage = unwrap(fileStorageLocator.getDefault());
         if (fileStorage instanceof AwsFileStorage) {
             ((AwsFileStorage) fileStorage).refreshS3Client();
             return "Refreshed successfully";
@@ -32,7 +33,7 @@ public class AwsFileStorageManagementFacade {
             @ManagedOperationParameter(name = "accessKey", description = "Amazon S3 access key"),
             @ManagedOperationParameter(name = "secretAccessKey", description = "Amazon S3 secret access key")})
     public String refreshS3Client(String storageName, String accessKey, String secretAccessKey) {
-        FileStorage fileStorage = fileStorageLocator.getByName(storageName);
+        FileStorage fileStorage = unwrap(fileStorageLocator.getByName(storageName));
         if (fileStorage instanceof AwsFileStorage) {
             AwsFileStorage awsFileStorage = (AwsFileStorage) fileStorage;
             awsFileStorage.setAccessKey(accessKey);
@@ -57,7 +58,7 @@ public class AwsFileStorageManagementFacade {
     public String refreshS3Client(String storageName, String accessKey, String secretAccessKey,
                                   String region, String bucket, int chunkSize, @Nullable String endpointUrl,
                                   boolean usePathStyleBucketAddressing) {
-        FileStorage fileStorage = fileStorageLocator.getByName(storageName);
+        FileStorage fileStorage = unwrap(fileStorageLocator.getByName(storageName));
         if (fileStorage instanceof AwsFileStorage) {
             AwsFileStorage awsFileStorage = (AwsFileStorage) fileStorage;
             awsFileStorage.setAccessKey(accessKey);
@@ -72,4 +73,10 @@ public class AwsFileStorageManagementFacade {
         }
         return "Not an Amazon S3 file storage - refresh attempt ignored";
     }
+
+    protected FileStorage unwrap(FileStorage fileStorage) {
+        return fileStorage instanceof CachingFileStorage
+                ? ((CachingFileStorage) fileStorage).getDelegate()
+                : fileStorage;
+    }
 }
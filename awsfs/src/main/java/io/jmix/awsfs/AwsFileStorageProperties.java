@@ -41,6 +41,16 @@ public class AwsFileStorageProperties {
      */
     boolean usePathStyleBucketAddressing;
 
+    /**
+     * Maximum number of multipart upload parts of a single file which are uploaded concurrently.
+     */
+    int maxPartsInFlight;
+
+    /**
+     * Number of attempts to upload a part of a multipart upload before the whole upload is aborted.
+     */
+    int partUploadAttempts;
+
     public AwsFileStorageProperties(
             String accessKey,
             String secretAccessKey,
@@ -48,7 +58,9 @@ public class AwsFileStorageProperties {
             String bucket,
             @DefaultValue("8192") int chunkSize,
             @DefaultValue("") String endpointUrl,
-            @DefaultValue("false") boolean usePathStyleBucketAddressing) {
+            @DefaultValue("false") boolean usePathStyleBucketAddressing,
+            @DefaultValue("4") int maxPartsInFlight,
+            @DefaultValue("3") int partUploadAttempts) {
         this.accessKey = accessKey;
         this.secretAccessKey = secretAccessKey;
         this.region = region;
@@ -56,6 +68,8 @@ public class AwsFileStorageProperties {
         this.chunkSize = chunkSize;
         this.endpointUrl = endpointUrl;
         this.usePathStyleBucketAddressing = usePathStyleBucketAddressing;
+        this.maxPartsInFlight = maxPartsInFlight;
+        this.partUploadAttempts = partUploadAttempts;
     }
 
     /**
@@ -106,4 +120,18 @@ public class AwsFileStorageProperties {
     public boolean getUsePathStyleBucketAddressing() {
         return usePathStyleBucketAddressing;
     }
+
+    /**
+     * @see #maxPartsInFlight
+     */
+    public int getMaxPartsInFlight() {
+        return maxPartsInFlight;
+    }
+
+    /**
+     * @see #partUploadAttempts
+     */
+    public int getPartUploadAttempts() {
+        return partUploadAttempts;
+    }
 }
@@ -23,6 +23,8 @@ import java.util.Locale;
 import java.util.stream.Collectors;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
 
 @Data
 @ConfigurationProperties(prefix = "jmix.core")
@@ -33,17 +35,38 @@ public class CoreProperties {
     String defaultFileStorage;
     List<Locale> availableLocales;
 
+    /**
+     * Names of file storages which files are cached on the local disk when loaded.
+     */
+    List<String> fileStorageCacheStorages;
+
+    /**
+     * Directory of the file storage cache. By default, {@code file-storage-cache} in the temporary directory.
+     */
+    String fileStorageCacheDir;
+
+    /**
+     * Maximum total size of cached files of each cached file storage.
+     */
+    DataSize fileStorageCacheMaxSize;
+
     public CoreProperties(
             String confDir,
             String workDir,
             String tempDir,
             String dbDir,
             List<String> availableLocales,
-            String defaultFileStorage) {
+            String defaultFileStorage,
+            @DefaultValue List<String> fileStorageCacheStorages,
+            String fileStorageCacheDir,
+            @DefaultValue("256MB") DataSize fileStorageCacheMaxSize) {
         this.confDir = confDir;
         this.workDir = workDir;
         this.tempDir = tempDir;
         this.defaultFileStorage = defaultFileStorage;
+        this.fileStorageCacheStorages = fileStorageCacheStorages;
+        this.fileStorageCacheDir = fileStorageCacheDir;
+        this.fileStorageCacheMaxSize = fileStorageCacheMaxSize;
         if (availableLocales==null) {
             this.availableLocales = Collections.singletonList(Locale.getDefault());
         } else {
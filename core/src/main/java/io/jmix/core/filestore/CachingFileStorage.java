@@ -0,0 +1,377 @@
+/*
+ * Copyright 2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.jmix.core.filestore;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Stream;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read-through cache of files of another {@link FileStorage} in a local directory.
+ * <p>
+ * Loaded files are kept on disk until the total size of the cache exceeds the limit; then the least recently used
+ * files are evicted. Concurrent requests for a file which is not cached yet load it from the underlying storage only
+ * once. Removing a file through this storage removes it from the cache as well.
+ * <p>
+ * The cache is created by {@link FileStorageLocatorImpl} for the storages listed in the
+ * {@code jmix.core.file-storage-cache-storages} application property.
+ */
+public class CachingFileStorage implements FileStorage {
+
+    private static final Logger log = LoggerFactory.getLogger(CachingFileStorage.class);
+
+    protected final FileStorage delegate;
+    protected final Path cacheDir;
+    protected final long maxSize;
+
+    protected final Counter hitCounter;
+    protected final Counter missCounter;
+    protected final Counter evictionCounter;
+
+    // access-ordered, guarded by this
+    protected final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    protected long currentSize;
+
+    protected final ConcurrentMap<String, CompletableFuture<LoadedFile>> loadingFiles = new ConcurrentHashMap<>();
+
+    /**
+     * @param delegate      storage which files are cached
+     * @param cacheDir      directory to keep the cached files in, its contents is removed on creation
+     * @param maxSize       maximum total size of the cached files in bytes
+     * @param meterRegistry registry to report cache hits, misses and evictions to
+     */
+    public CachingFileStorage(FileStorage delegate, Path cacheDir, long maxSize, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.cacheDir = cacheDir;
+        this.maxSize = maxSize;
+
+        String storageName = delegate.getStorageName();
+        this.hitCounter = meterRegistry.counter("jmix.FileStorage.cache.hit", "storage", storageName);
+        this.missCounter = meterRegistry.counter("jmix.FileStorage.cache.miss", "storage", storageName);
+        this.evictionCounter = meterRegistry.counter("jmix.FileStorage.cache.eviction", "storage", storageName);
+        meterRegistry.gauge("jmix.FileStorage.cache.size", Tags.of("storage", storageName),
+                this, CachingFileStorage::getCurrentSize);
+
+        initCacheDir();
+    }
+
+    /**
+     * @return the underlying storage
+     */
+    public FileStorage getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * @return total size of the cached files in bytes
+     */
+    public synchronized long getCurrentSize() {
+        return currentSize;
+    }
+
+    @Override
+    public String getStorageName() {
+        return delegate.getStorageName();
+    }
+
+    @Override
+    public FileRef saveStream(String fileName, InputStream inputStream, Map<String, Object> parameters) {
+        return delegate.saveStream(fileName, inputStream, parameters);
+    }
+
+    @Override
+    public InputStream openStream(FileRef reference) {
+        LoadedFile loadedFile = getCachedFile(reference);
+        try {
+            return loadedFile.cached
+                    ? Files.newInputStream(loadedFile.file)
+                    : Files.newInputStream(loadedFile.file, StandardOpenOption.DELETE_ON_CLOSE);
+        } catch (NoSuchFileException e) {
+            // evicted in the meantime
+            return delegate.openStream(reference);
+        } catch (IOException e) {
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, reference.toString(), e);
+        }
+    }
+
+    /**
+     * Reads the range from the cached file if the file is in the cache, otherwise from the underlying storage
+     * without caching the file.
+     */
+    @Override
+    public InputStream openStream(FileRef reference, long offset, long length) {
+        FileChannel channel = openCachedChannel(reference, offset, length);
+        if (channel == null) {
+            return delegate.openStream(reference, offset, length);
+        }
+        return boundedStream(reference, channel, length);
+    }
+
+    @Override
+    public ReadableByteChannel openChannel(FileRef reference, long offset, long length) {
+        FileChannel channel = openCachedChannel(reference, offset, length);
+        if (channel == null) {
+            return delegate.openChannel(reference, offset, length);
+        }
+        return Channels.newChannel(boundedStream(reference, channel, length));
+    }
+
+    @Override
+    public long transferTo(FileRef reference, long offset, long length, WritableByteChannel target) {
+        FileChannel channel = openCachedChannel(reference, offset, length);
+        if (channel == null) {
+            return delegate.transferTo(reference, offset, length, target);
+        }
+        try (channel) {
+            long end = Math.min(channel.size(), length > Long.MAX_VALUE - offset ? Long.MAX_VALUE : offset + length);
+            long position = offset;
+            while (position < end) {
+                position += channel.transferTo(position, end - position, target);
+            }
+            return Math.max(0, end - offset);
+        } catch (IOException e) {
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, reference.toString(), e);
+        }
+    }
+
+    @Override
+    public void removeFile(FileRef reference) {
+        delegate.removeFile(reference);
+        invalidate(reference);
+    }
+
+    @Override
+    public boolean fileExists(FileRef reference) {
+        return delegate.fileExists(reference);
+    }
+
+    /**
+     * Removes the file from the cache without removing it from the underlying storage.
+     */
+    public void invalidate(FileRef reference) {
+        String key = getKey(reference);
+        CacheEntry entry;
+        synchronized (this) {
+            // a file being loaded now will not be put to the cache
+            loadingFiles.remove(key);
+            entry = entries.remove(key);
+            if (entry != null) {
+                currentSize -= entry.size;
+            }
+        }
+        if (entry != null) {
+            deleteQuietly(entry.file);
+        }
+    }
+
+    /**
+     * Removes all files from the cache.
+     */
+    public void invalidateAll() {
+        synchronized (this) {
+            loadingFiles.clear();
+            entries.values().forEach(entry -> deleteQuietly(entry.file));
+            entries.clear();
+            currentSize = 0;
+        }
+    }
+
+    protected String getKey(FileRef reference) {
+        return reference.getPath();
+    }
+
+    /**
+     * Returns the cached file, loading it from the underlying storage if needed.
+     */
+    protected LoadedFile getCachedFile(FileRef reference) {
+        String key = getKey(reference);
+        synchronized (this) {
+            CacheEntry entry = entries.get(key);
+            if (entry != null) {
+                hitCounter.increment();
+                return new LoadedFile(entry.file, true);
+            }
+        }
+        missCounter.increment();
+
+        CompletableFuture<LoadedFile> loading = new CompletableFuture<>();
+        CompletableFuture<LoadedFile> existing = loadingFiles.putIfAbsent(key, loading);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof FileStorageException) {
+                    throw (FileStorageException) e.getCause();
+                }
+                throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, reference.toString(), e.getCause());
+            }
+        }
+
+        try {
+            LoadedFile loadedFile = load(reference, key, loading);
+            loading.complete(loadedFile);
+            return loadedFile;
+        } catch (RuntimeException e) {
+            loading.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadingFiles.remove(key, loading);
+        }
+    }
+
+    protected LoadedFile load(FileRef reference, String key, CompletableFuture<LoadedFile> loading) {
+        Path file;
+        long size;
+        try (InputStream inputStream = delegate.openStream(reference)) {
+            file = Files.createTempFile(cacheDir, "file", ".cache");
+            try {
+                size = Files.copy(inputStream, file, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException | RuntimeException e) {
+                deleteQuietly(file);
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, reference.toString(), e);
+        }
+
+        synchronized (this) {
+            if (size <= maxSize && loadingFiles.get(key) == loading) {
+                CacheEntry previous = entries.put(key, new CacheEntry(file, size));
+                currentSize += size;
+                if (previous != null) {
+                    currentSize -= previous.size;
+                    deleteQuietly(previous.file);
+                }
+                evict();
+                return new LoadedFile(file, true);
+            }
+        }
+        // too large for the cache or invalidated while loading: the file is deleted after reading
+        return new LoadedFile(file, false);
+    }
+
+    /**
+     * Removes the least recently used files until the total size fits the limit. Must be called holding the lock.
+     */
+    protected void evict() {
+        Iterator<CacheEntry> iterator = entries.values().iterator();
+        while (currentSize > maxSize && iterator.hasNext()) {
+            CacheEntry entry = iterator.next();
+            iterator.remove();
+            currentSize -= entry.size;
+            deleteQuietly(entry.file);
+            evictionCounter.increment();
+        }
+    }
+
+    /**
+     * Opens the cached file positioned at the offset, or returns null if the file is not in the cache.
+     */
+    protected FileChannel openCachedChannel(FileRef reference, long offset, long length) {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Invalid range: offset=" + offset + ", length=" + length);
+        }
+        Path file;
+        synchronized (this) {
+            CacheEntry entry = entries.get(getKey(reference));
+            if (entry == null) {
+                return null;
+            }
+            file = entry.file;
+        }
+        hitCounter.increment();
+        try {
+            return FileChannel.open(file, StandardOpenOption.READ).position(offset);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, reference.toString(), e);
+        }
+    }
+
+    protected InputStream boundedStream(FileRef reference, FileChannel channel, long length) {
+        try {
+            return BoundedInputStream.builder()
+                    .setInputStream(Channels.newInputStream(channel))
+                    .setMaxCount(length)
+                    .get();
+        } catch (IOException e) {
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, reference.toString(), e);
+        }
+    }
+
+    protected void initCacheDir() {
+        try {
+            Files.createDirectories(cacheDir);
+            try (Stream<Path> files = Files.list(cacheDir)) {
+                files.forEach(this::deleteQuietly);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot initialize file storage cache directory " + cacheDir, e);
+        }
+    }
+
+    protected void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.debug("Unable to delete cached file {}", file, e);
+        }
+    }
+
+    protected static class CacheEntry {
+        protected final Path file;
+        protected final long size;
+
+        protected CacheEntry(Path file, long size) {
+            this.file = file;
+            this.size = size;
+        }
+    }
+
+    protected static class LoadedFile {
+        protected final Path file;
+        protected final boolean cached;
+
+        protected LoadedFile(Path file, boolean cached) {
+            this.file = file;
+            this.cached = cached;
+        }
+    }
+}
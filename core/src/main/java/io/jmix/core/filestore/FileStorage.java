@@ -16,9 +16,17 @@
 
 package io.jmix.core.filestore;
 
+import java.io.EOFException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Collections;
 import java.util.Map;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 
 /**
  * Interface of a component to store and load files defined by file references.
@@ -68,6 +76,82 @@ public interface FileStorage {
      */
     InputStream openStream(FileRef reference);
 
+    /**
+     * Returns an input stream to load a range of a file contents, for example to serve an HTTP Range request.
+     * <p>
+     * The default implementation skips {@code offset} bytes of the stream returned by {@link #openStream(FileRef)}.
+     * Storage implementations should override it to read only the requested range.
+     *
+     * @param reference file reference
+     * @param offset    position of the first byte to read
+     * @param length    maximum number of bytes to read, the stream ends earlier if the end of file is reached
+     * @return input stream, must be closed after use
+     * @throws IllegalArgumentException if arguments are incorrect
+     * @throws FileStorageException     if something goes wrong
+     */
+    default InputStream openStream(FileRef reference, long offset, long length) {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Invalid range: offset=" + offset + ", length=" + length);
+        }
+        InputStream inputStream = openStream(reference);
+        try {
+            inputStream.skipNBytes(offset);
+            return BoundedInputStream.builder()
+                    .setInputStream(inputStream)
+                    .setMaxCount(length)
+                    .get();
+        } catch (EOFException e) {
+            IOUtils.closeQuietly(inputStream);
+            return InputStream.nullInputStream();
+        } catch (IOException e) {
+            IOUtils.closeQuietly(inputStream);
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, reference.toString(), e);
+        }
+    }
+
+    /**
+     * Returns a channel to load a range of a file contents.
+     *
+     * @param reference file reference
+     * @param offset    position of the first byte to read
+     * @param length    maximum number of bytes to read, the channel ends earlier if the end of file is reached
+     * @return channel, must be closed after use
+     * @throws IllegalArgumentException if arguments are incorrect
+     * @throws FileStorageException     if something goes wrong
+     * @see #openStream(FileRef, long, long)
+     */
+    default ReadableByteChannel openChannel(FileRef reference, long offset, long length) {
+        return Channels.newChannel(openStream(reference, offset, length));
+    }
+
+    /**
+     * Writes a range of a file contents to the given channel.
+     *
+     * @param reference file reference
+     * @param offset    position of the first byte to write
+     * @param length    maximum number of bytes to write
+     * @param target    channel to write to, it is not closed by this method
+     * @return number of bytes written
+     * @throws IllegalArgumentException if arguments are incorrect
+     * @throws FileStorageException     if something goes wrong
+     */
+    default long transferTo(FileRef reference, long offset, long length, WritableByteChannel target) {
+        try (ReadableByteChannel channel = openChannel(reference, offset, length)) {
+            ByteBuffer buffer = ByteBuffer.allocate(IOUtils.DEFAULT_BUFFER_SIZE);
+            long transferred = 0;
+            while (channel.read(buffer)!=IOUtils.EOF) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    transferred += target.write(buffer);
+                }
+                buffer.clear();
+            }
+            return transferred;
+        } catch (IOException e) {
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, reference.toString(), e);
+        }
+    }
+
     /**
      * Removes a file from the file storage.
      *
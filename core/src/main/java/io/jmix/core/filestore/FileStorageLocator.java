@@ -22,6 +22,10 @@ package io.jmix.core.filestore;
  * If exactly one file storage registered in the application, this file storage is considered as the default
  * file storage of the application. If more than one file storage registered, the default file storage
  * should be specified in the {@code jmix.core.defaultFileStorage} application property.
+ * <p>
+ * File storages listed in the {@code jmix.core.file-storage-cache-storages} application property are returned
+ * wrapped in {@link CachingFileStorage}, so the result of a lookup can be cast only to {@link FileStorage} then.
+ * Use {@link CachingFileStorage#getDelegate()} to access the storage bean itself, bypassing the cache.
  */
 public interface FileStorageLocator {
 
@@ -29,7 +33,7 @@ public interface FileStorageLocator {
      * Returns the file storage with the given name determined by {@link FileStorage#getStorageName()}.
      *
      * @param storageName file storage name
-     * @return file storage
+     * @return file storage, or {@link CachingFileStorage} wrapping it if the storage is cached
      * @throws IllegalArgumentException if no file storage with the given name found
      */
     <T extends FileStorage> T getByName(String storageName);
@@ -37,7 +41,7 @@ public interface FileStorageLocator {
     /**
      * Returns the default file storage of the application.
      *
-     * @return file storage
+     * @return file storage, or {@link CachingFileStorage} wrapping it if the storage is cached
      * @throws IllegalStateException if no file storage registered in the application
      *                               or there are more than one file storage registered and
      *                               the default file storage is not specified
@@ -17,8 +17,12 @@
 package io.jmix.core.filestore;
 
 import io.jmix.core.CoreProperties;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -36,6 +40,9 @@ public class FileStorageLocatorImpl implements FileStorageLocator {
     @Autowired
     private CoreProperties properties;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @PostConstruct
     protected void initStoragesByNames() {
         if (storagesByBeanNames.isEmpty()) {
@@ -47,16 +54,36 @@ public class FileStorageLocatorImpl implements FileStorageLocator {
                                 throw new IllegalStateException("There are more than one FileStorage beans registered" +
                                         " with the same storageName: " + fileStorage.getStorageName());
                             }));
+            storagesByNames = storagesByNames.entrySet().stream()
+                    .collect(Collectors.toMap(Map.Entry::getKey, entry -> wrapWithCache(entry.getValue())));
         }
     }
 
+    /**
+     * Wraps the storage with {@link CachingFileStorage} if it is listed
+     * in the {@code jmix.core.file-storage-cache-storages} property.
+     */
+    protected FileStorage wrapWithCache(FileStorage fileStorage) {
+        List<String> cachedStorages = properties.getFileStorageCacheStorages();
+        if (cachedStorages == null || !cachedStorages.contains(fileStorage.getStorageName())) {
+            return fileStorage;
+        }
+        String cacheDir = properties.getFileStorageCacheDir();
+        Path cacheRoot = cacheDir != null
+                ? Paths.get(cacheDir)
+                : Paths.get(properties.getTempDir() != null ? properties.getTempDir() : System.getProperty("java.io.tmpdir"),
+                "file-storage-cache");
+        return new CachingFileStorage(fileStorage, cacheRoot.resolve(fileStorage.getStorageName()),
+                properties.getFileStorageCacheMaxSize().toBytes(), meterRegistry);
+    }
+
     protected <T extends FileStorage> T getByBeanName(String beanName) {
         FileStorage fileStorage = storagesByBeanNames.get(beanName);
         if (fileStorage == null) {
             throw new IllegalArgumentException("FileStorage not found: " + beanName);
         }
-        //noinspection unchecked
-        return (T) fileStorage;
+        // the same instance as returned by getByName(), which may be a cache wrapping the bean
+        return getByName(fileStorage.getStorageName());
     }
 
     @Override
@@ -75,10 +102,10 @@ public class FileStorageLocatorImpl implements FileStorageLocator {
         if (defaultFileStorage != null) {
             return getByName(defaultFileStorage);
         } else {
-            if (storagesByBeanNames.size() == 1) {
+            if (storagesByNames.size() == 1) {
                 //noinspection unchecked
-                return (T) storagesByBeanNames.values().iterator().next();
-            } else if (storagesByBeanNames.isEmpty()) {
+                return (T) storagesByNames.values().iterator().next();
+            } else if (storagesByNames.isEmpty()) {
                 throw new IllegalStateException("No FileStorage beans registered");
             } else {
                 throw new IllegalStateException("There are more than one FileStorage beans registered, " +
@@ -28,4 +28,25 @@ public interface EmailCleaner {
      * @return count of messages and attachments, that has been deleted
      */
     Integer deleteOldEmails();
+
+    /**
+     * @return true if {@link #deleteOldEmails()} is currently running
+     */
+    boolean isCleaningInProgress();
+
+    /**
+     * @return number of messages deleted by the running or the last completed cleaning
+     */
+    long getDeletedMessagesCount();
+
+    /**
+     * @return number of files removed from file storage by the running or the last completed cleaning
+     */
+    long getDeletedFilesCount();
+
+    /**
+     * Requests the running cleaning to stop after the current chunk. Messages which are not deleted yet
+     * will be deleted by the next cleaning.
+     */
+    void stopCleaning();
 }
@@ -41,4 +41,13 @@ public class EmailConfiguration {
         threadPoolTaskExecutor.setQueueCapacity(200);
         return threadPoolTaskExecutor;
     }
+
+    @Bean("mailFileStorageTaskExecutor")
+    public TaskExecutor fileStorageTaskExecutor() {
+        ThreadPoolTaskExecutor threadPoolTaskExecutor = new ThreadPoolTaskExecutor();
+        threadPoolTaskExecutor.setCorePoolSize(4);
+        threadPoolTaskExecutor.setMaxPoolSize(4);
+        threadPoolTaskExecutor.setThreadNamePrefix("mail-fs-");
+        return threadPoolTaskExecutor;
+    }
 }
@@ -26,10 +26,22 @@ import java.util.List;
  */
 public interface EmailDataProvider {
     /**
-     * Loads email messages to be sent.
+     * Claims email messages to be sent by the current node.
+     * <p>
+     * No more than {@link EmailerProperties#getMessageQueueCapacity()} messages are claimed at once.
+     * Claimed messages are switched to {@link SendingStatus#SENDING}, their bodies and attachments are not loaded,
+     * see {@link #loadBodyAndAttachments(SendingMessage)}.
      */
     List<SendingMessage> loadEmailsToSend();
 
+    /**
+     * Loads the given message together with its body text and attachments content.
+     *
+     * @param sendingMessage message claimed by {@link #loadEmailsToSend()}
+     * @return message ready to be sent
+     */
+    SendingMessage loadBodyAndAttachments(SendingMessage sendingMessage);
+
     /**
      * Update status for specified message.
      *
@@ -50,6 +62,14 @@ public interface EmailDataProvider {
      */
     void persistMessage(SendingMessage sendingMessage, SendingStatus status);
 
+    /**
+     * Stores given messages with specified status.
+     * <p>
+     * Messages are stored in chunks of {@link EmailerProperties#getBulkPersistBatchSize()} size, one transaction
+     * per chunk.
+     */
+    void persistMessages(List<SendingMessage> sendingMessages, SendingStatus status);
+
     /**
      * Migrate list of existing messages to be stored in file storage, in a single transaction.
      */
@@ -18,7 +18,9 @@ package io.jmix.email;
 import io.jmix.email.entity.SendingMessage;
 
 import org.springframework.lang.Nullable;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 
 
 /**
@@ -79,6 +81,17 @@ public interface Emailer {
      */
     SendingMessage sendEmailAsync(EmailInfo info);
 
+    /**
+     * Send emails asynchronously.
+     * <p>
+     * Works like {@link #sendEmailAsync(EmailInfo)} for each of the given emails, but stores messages in batches,
+     * which is much faster for a large number of emails.
+     *
+     * @param infos emails details
+     * @return created {@link SendingMessage}s in the order of given emails
+     */
+    List<SendingMessage> sendEmailsAsync(Collection<EmailInfo> infos);
+
     /**
      * Send emails added to the queue.
      * <p>
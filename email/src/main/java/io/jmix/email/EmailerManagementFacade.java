@@ -56,6 +56,9 @@ public class EmailerManagementFacade {
     @Autowired
     protected EmailDataProvider emailDataProvider;
 
+    @Autowired
+    protected EmailCleaner emailCleaner;
+
     @Autowired
     protected void setJavaMailProperties() {
         javaMailProperties = javaMailSender.getJavaMailProperties();
@@ -131,6 +134,33 @@ public class EmailerManagementFacade {
         }
     }
 
+    @ManagedAttribute(description = "Whether old emails are being deleted right now")
+    public boolean isCleaningInProgress() {
+        return emailCleaner.isCleaningInProgress();
+    }
+
+    @ManagedAttribute(description = "Number of messages deleted by the running or the last email cleaning")
+    public long getCleaningDeletedMessagesCount() {
+        return emailCleaner.getDeletedMessagesCount();
+    }
+
+    @ManagedAttribute(description = "Number of files deleted by the running or the last email cleaning")
+    public long getCleaningDeletedFilesCount() {
+        return emailCleaner.getDeletedFilesCount();
+    }
+
+    @ManagedOperation(description = "Delete old emails according to the configured maximum age")
+    public String deleteOldEmails() {
+        Integer deleted = emailCleaner.deleteOldEmails();
+        return "Deleted " + deleted + " emails";
+    }
+
+    @ManagedOperation(description = "Stop the running email cleaning after the current chunk")
+    public String stopEmailCleaning() {
+        emailCleaner.stopCleaning();
+        return "Stop requested";
+    }
+
     //    @Authenticated
     @ManagedOperation(description = "Migrate existing email history to use file storage")
     public String migrateEmailsToFileStorage(String password) {
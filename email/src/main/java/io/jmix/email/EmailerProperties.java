@@ -42,7 +42,8 @@ public class EmailerProperties {
 
     /**
      * Number of queued messages per every scheduler tick. Scheduler will process no more than given number of queued
-     * messages per every scheduler tick.
+     * messages per every scheduler tick. Messages are claimed in pages of this size, so several nodes can drain the
+     * queue concurrently without sending the same message twice.
      */
     int messageQueueCapacity;
 
@@ -120,6 +121,41 @@ public class EmailerProperties {
      */
     boolean cleanFileStorage;
 
+    /**
+     * Number of messages deleted in one transaction by the cleaning scheduler.
+     */
+    int cleaningBatchSize;
+
+    /**
+     * Time in seconds for which a file shared by attachments with the same content is kept after its last
+     * attachment is deleted. Attachments being stored at the same time may reuse the file, so it is removed by
+     * a later cleaning run if it is still unreferenced. Must be longer than storing of a message takes.
+     */
+    int sharedFileRemovalDelaySec;
+
+    /**
+     * Maximum number of pooled SMTP connections used to send emails. Each connection is reused for several
+     * messages. Zero value (0) means that a new connection is opened for every message.
+     */
+    @PositiveOrZero
+    int smtpPoolSize;
+
+    /**
+     * Number of messages sent through a pooled SMTP connection before it is closed and reopened.
+     */
+    int smtpMessagesPerConnection;
+
+    /**
+     * Time in seconds after which an unused pooled SMTP connection is closed.
+     */
+    int smtpPoolIdleTimeoutSec;
+
+    /**
+     * Number of messages stored in one transaction by {@link Emailer#sendEmailsAsync(java.util.Collection)}. Also used
+     * as JDBC batch size for these inserts.
+     */
+    int bulkPersistBatchSize;
+
     public EmailerProperties(@DefaultValue("DoNotReply@localhost") String fromAddress,
                              @DefaultValue("2") int scheduledSendingDelayCallCount,
                              @DefaultValue("100") int messageQueueCapacity,
@@ -133,7 +169,13 @@ public class EmailerProperties {
                              @DefaultValue("0") int maxAgeOfImportantMessages,
                              @DefaultValue("0") int maxAgeOfNonImportantMessages,
                              @DefaultValue("0 0 0 * * ?") String emailCleaningCron,
-                             @DefaultValue("false") boolean cleanFileStorage) {
+                             @DefaultValue("false") boolean cleanFileStorage,
+                             @DefaultValue("1000") int cleaningBatchSize,
+                             @DefaultValue("3600") int sharedFileRemovalDelaySec,
+                             @DefaultValue("0") int smtpPoolSize,
+                             @DefaultValue("100") int smtpMessagesPerConnection,
+                             @DefaultValue("60") int smtpPoolIdleTimeoutSec,
+                             @DefaultValue("100") int bulkPersistBatchSize) {
         this.fromAddress = fromAddress;
         this.scheduledSendingDelayCallCount = scheduledSendingDelayCallCount;
         this.messageQueueCapacity = messageQueueCapacity;
@@ -148,5 +190,11 @@ public class EmailerProperties {
         this.maxAgeOfNonImportantMessages = maxAgeOfNonImportantMessages;
         this.emailCleaningCron = emailCleaningCron;
         this.cleanFileStorage = cleanFileStorage;
+        this.cleaningBatchSize = cleaningBatchSize;
+        this.sharedFileRemovalDelaySec = sharedFileRemovalDelaySec;
+        this.smtpPoolSize = smtpPoolSize;
+        this.smtpMessagesPerConnection = smtpMessagesPerConnection;
+        this.smtpPoolIdleTimeoutSec = smtpPoolIdleTimeoutSec;
+        this.bulkPersistBatchSize = bulkPersistBatchSize;
     }
 }
@@ -22,6 +22,7 @@ import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.FetchType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
@@ -37,7 +38,9 @@ import org.springframework.data.annotation.LastModifiedDate;
 
 @Data
 @Entity(name = "email_SendingAttachment")
-@Table(name = "EMAIL_SENDING_ATTACHMENT")
+@Table(name = "EMAIL_SENDING_ATTACHMENT", indexes = {
+        @Index(name = "IDX_EMAIL_SENDING_ATTACHMENT_CONTENT_HASH", columnList = "CONTENT_HASH")
+})
 public class SendingAttachment implements Serializable {
     private static final long serialVersionUID = -8253918579521701435L;
 
@@ -84,6 +87,13 @@ public class SendingAttachment implements Serializable {
     @Column(name = "CONTENT_FILE")
     protected FileRef contentFile;
 
+    /**
+     * SHA-256 hash of the attachment data stored in {@link #contentFile}. Attachments with the same hash share
+     * the same file, which is removed when the last of them is deleted.
+     */
+    @Column(name = "CONTENT_HASH", length = 64)
+    protected String contentHash;
+
     @Column(name = "NAME", length = 500)
     protected String name;
 
@@ -121,6 +121,12 @@ public class SendingMessage implements Serializable {
     @Column(name = "ATTEMPTS_MADE")
     protected Integer attemptsMade;
 
+    /**
+     * Identifier of the node which has claimed the message for sending.
+     */
+    @Column(name = "OWNER_NODE", length = 255)
+    protected String ownerNode;
+
     @OneToMany(mappedBy = "message")
     protected List<SendingAttachment> attachments;
 
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.jmix.email.entity;
+
+import io.jmix.core.filestore.FileRef;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import java.io.Serializable;
+import java.util.Date;
+import java.util.UUID;
+import lombok.Data;
+
+/**
+ * Shared attachment file which is not referenced by attachments anymore. The file is removed by a later cleaning
+ * run on any node, unless a message stored meanwhile has reused it.
+ */
+@Data
+@Entity(name = "email_SharedFileRemoval")
+@Table(name = "EMAIL_SHARED_FILE_REMOVAL", indexes = {
+        @Index(name = "IDX_EMAIL_SHARED_FILE_REMOVAL_CREATE_TS", columnList = "CREATE_TS")
+})
+public class SharedFileRemoval implements Serializable {
+    private static final long serialVersionUID = 4915032640227846583L;
+
+    @Id
+    @Column(name = "ID", nullable = false)
+    private UUID id;
+
+    /**
+     * Time the file became unreferenced.
+     */
+    @Column(name = "CREATE_TS", nullable = false)
+    private Date createTs;
+
+    @Column(name = "CONTENT_FILE", nullable = false)
+    private FileRef contentFile;
+}
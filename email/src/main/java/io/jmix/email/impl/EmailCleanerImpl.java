@@ -16,77 +16,256 @@
 
 package io.jmix.email.impl;
 
+import io.jmix.core.filestore.FileRef;
 import io.jmix.core.filestore.FileStorage;
 import io.jmix.email.EmailCleaner;
 import io.jmix.email.EmailerProperties;
-import io.jmix.email.entity.SendingMessage;
+import io.jmix.email.entity.SharedFileRemoval;
+import io.jmix.email.repository.SendingAttachmentRepository;
+import io.jmix.email.repository.SendingAttachmentRepository.ContentFileView;
 import io.jmix.email.repository.SendingMessageRepository;
+import io.jmix.email.repository.SharedFileRemovalRepository;
+import jakarta.annotation.Resource;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
 
 @Component("email_EmailCleaner")
 public class EmailCleanerImpl implements EmailCleaner {
     private static final Logger log = LoggerFactory.getLogger(EmailCleanerImpl.class);
 
+    private static final UUID MIN_ID = new UUID(0, 0);
+
     @Autowired
     private EmailerProperties emailerProperties;
 
     @Autowired
     private SendingMessageRepository sendingMessageRepository;
 
+    @Autowired
+    private SendingAttachmentRepository sendingAttachmentRepository;
+
+    @Autowired
+    private SharedFileRemovalRepository sharedFileRemovalRepository;
+
     @Autowired
     private FileStorage fileStorage;
 
-    @Transactional
+    @Resource(name = "mailFileStorageTaskExecutor")
+    private TaskExecutor fileStorageTaskExecutor;
+
+    private TransactionTemplate transaction;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final AtomicBoolean stopRequested = new AtomicBoolean();
+
+    private final AtomicLong deletedMessagesCount = new AtomicLong();
+
+    private final AtomicLong deletedFilesCount = new AtomicLong();
+
+    @Autowired
+    protected void setTransaction(PlatformTransactionManager transactionManager) {
+        transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
     @Override
     public Integer deleteOldEmails() {
-        log.trace("Start deletion of old emails...");
-        int maxAgeOfImportantMessages = emailerProperties.getMaxAgeOfImportantMessages();
-        int maxAgeOfNonImportantMessages = emailerProperties.getMaxAgeOfNonImportantMessages();
-
-        int result = 0;
-        if (maxAgeOfNonImportantMessages!=0) {
-            result += deleteMessages(maxAgeOfNonImportantMessages, false);
+        if (!running.compareAndSet(false, true)) {
+            log.debug("Deletion of old emails is already in progress");
+            return 0;
         }
+        try {
+            stopRequested.set(false);
+            deletedMessagesCount.set(0);
+            deletedFilesCount.set(0);
+
+            log.trace("Start deletion of old emails...");
+            if (emailerProperties.isCleanFileStorage()) {
+                removeUnreferencedSharedFiles();
+            }
+
+            int maxAgeOfImportantMessages = emailerProperties.getMaxAgeOfImportantMessages();
+            int maxAgeOfNonImportantMessages = emailerProperties.getMaxAgeOfNonImportantMessages();
+
+            int result = 0;
+            if (maxAgeOfNonImportantMessages!=0) {
+                result += deleteMessages(maxAgeOfNonImportantMessages, false);
+            }
 
-        if (maxAgeOfImportantMessages!=0) {
-            result += deleteMessages(maxAgeOfImportantMessages, true);
+            if (maxAgeOfImportantMessages!=0) {
+                result += deleteMessages(maxAgeOfImportantMessages, true);
+            }
+
+            log.trace("{} emails was deleted", result);
+            return result;
+        } finally {
+            running.set(false);
         }
+    }
 
-        log.trace("{} emails was deleted", result);
-        return result;
+    @Override
+    public boolean isCleaningInProgress() {
+        return running.get();
     }
 
+    @Override
+    public long getDeletedMessagesCount() {
+        return deletedMessagesCount.get();
+    }
+
+    @Override
+    public long getDeletedFilesCount() {
+        return deletedFilesCount.get();
+    }
+
+    @Override
+    public void stopCleaning() {
+        stopRequested.set(true);
+    }
+
+    /**
+     * Deletes messages chunk by chunk, each chunk is committed separately, so the cleaning can be stopped at any time
+     * and continued by the next run.
+     */
     private int deleteMessages(int ageOfMessage, boolean important) {
+        Date date = Date.from(ZonedDateTime.now().minusDays(ageOfMessage).toInstant());
+        int batchSize = Math.max(emailerProperties.getCleaningBatchSize(), 1);
 
-        List<SendingMessage> messagesToDelete = sendingMessageRepository.findByImportantAndCreateTsLessThan(
-                important, Date.from(ZonedDateTime.now().minusDays(ageOfMessage).toInstant()));
+        int result = 0;
+        UUID lastId = MIN_ID;
+        while (!stopRequested.get()) {
+            List<UUID> ids = sendingMessageRepository.findIdsToDelete(important, date, lastId, PageRequest.of(0, batchSize));
+            if (ids.isEmpty()) {
+                break;
+            }
+            lastId = ids.get(ids.size() - 1);
+
+            List<FileRef> filesToRemove = transaction.execute(status -> deleteChunk(ids));
+            result += ids.size();
+            deletedMessagesCount.addAndGet(ids.size());
+
+            if (filesToRemove!=null && !filesToRemove.isEmpty()) {
+                removeFiles(filesToRemove);
+            }
+        }
+        return result;
+    }
 
-        if (emailerProperties.isCleanFileStorage()) {
-            messagesToDelete.forEach(msg -> {
-                msg.getAttachments().stream()
-                        .filter(attachment -> attachment.getContentFile()!=null)
-                        .forEach(attachment -> fileStorage.removeFile(attachment.getContentFile()));
-                if (msg.getContentTextFile()!=null) {
-                    fileStorage.removeFile(msg.getContentTextFile());
+    /**
+     * Deletes messages with the given ids and their attachments. Files shared by attachments with the same content
+     * which are not referenced anymore are saved as {@link SharedFileRemoval}s and removed by a later run.
+     *
+     * @return files which are not referenced anymore and should be removed from file storage
+     */
+    private List<FileRef> deleteChunk(List<UUID> ids) {
+        List<FileRef> files = new ArrayList<>();
+        Set<String> contentHashes = new HashSet<>();
+        List<ContentFileView> attachmentFiles = new ArrayList<>();
+
+        boolean cleanFileStorage = emailerProperties.isCleanFileStorage();
+        if (cleanFileStorage) {
+            files.addAll(sendingMessageRepository.findContentTextFiles(ids));
+            attachmentFiles = sendingAttachmentRepository.findContentFilesByMessageIds(ids);
+        }
+
+        sendingAttachmentRepository.deleteByMessageIds(ids);
+        sendingMessageRepository.deleteByIds(ids);
+
+        if (cleanFileStorage) {
+            for (ContentFileView attachmentFile : attachmentFiles) {
+                if (attachmentFile.getContentHash()==null) {
+                    files.add(attachmentFile.getContentFile());
+                } else {
+                    contentHashes.add(attachmentFile.getContentHash());
+                }
+            }
+            if (!contentHashes.isEmpty()) {
+                // attachments with the same content hash share one file, it is removed after the last of them;
+                // a message being stored now may have found the file before the attachments were deleted
+                contentHashes.removeAll(sendingAttachmentRepository.findReferencedContentHashes(contentHashes));
+                Date now = new Date();
+                List<SharedFileRemoval> removals = attachmentFiles.stream()
+                        .filter(attachmentFile -> contentHashes.contains(attachmentFile.getContentHash()))
+                        .map(ContentFileView::getContentFile)
+                        .distinct()
+                        .map(file -> {
+                            SharedFileRemoval removal = new SharedFileRemoval();
+                            removal.setId(UUID.randomUUID());
+                            removal.setCreateTs(now);
+                            removal.setContentFile(file);
+                            return removal;
+                        })
+                        .collect(Collectors.toList());
+                sharedFileRemovalRepository.saveAll(removals);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Removes shared files which became unreferenced more than {@link EmailerProperties#getSharedFileRemovalDelaySec()}
+     * seconds ago and have not been reused since then. The pending removals are kept in the database, so they are
+     * done after a restart or by another node.
+     */
+    private void removeUnreferencedSharedFiles() {
+        Date date = new Date(System.currentTimeMillis()
+                - TimeUnit.SECONDS.toMillis(emailerProperties.getSharedFileRemovalDelaySec()));
+        int batchSize = Math.max(emailerProperties.getCleaningBatchSize(), 1);
+        while (!stopRequested.get()) {
+            List<FileRef> unreferenced = transaction.execute(status -> {
+                List<SharedFileRemoval> removals =
+                        sharedFileRemovalRepository.findCreatedBefore(date, PageRequest.of(0, batchSize));
+                if (removals.isEmpty()) {
+                    return null;
                 }
+                Set<FileRef> files = new LinkedHashSet<>();
+                removals.forEach(removal -> files.add(removal.getContentFile()));
+                sendingAttachmentRepository.findReferencedContentFiles(files).forEach(files::remove);
+                sharedFileRemovalRepository.deleteAllInBatch(removals);
+                return new ArrayList<>(files);
             });
+            if (unreferenced==null) {
+                break;
+            }
+            removeFiles(unreferenced);
         }
+    }
 
-        if (!messagesToDelete.isEmpty()) {
-            List<SendingMessage> sendingMessages = sendingMessageRepository.findAllById(messagesToDelete.stream().map(SendingMessage::getId).collect(Collectors.toList()));
-            sendingMessageRepository.deleteAllInBatch(sendingMessages);
-            return sendingMessages.size();
-        } else {
-            return 0;
+    private void removeFiles(List<FileRef> files) {
+        CompletableFuture<?>[] futures = files.stream()
+                .map(file -> CompletableFuture.runAsync(() -> removeFile(file), fileStorageTaskExecutor))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(futures).join();
+    }
+
+    private void removeFile(FileRef file) {
+        try {
+            fileStorage.removeFile(file);
+            deletedFilesCount.incrementAndGet();
+        } catch (Exception e) {
+            log.error("Failed to remove file {}", file, e);
         }
     }
 }
@@ -16,6 +16,7 @@
 
 package io.jmix.email.impl;
 
+import com.google.common.collect.Lists;
 import groovyjarjarantlr4.v4.runtime.misc.Nullable;
 import io.jmix.core.filestore.FileRef;
 import io.jmix.core.filestore.FileStorage;
@@ -28,19 +29,38 @@ import io.jmix.email.entity.SendingAttachment;
 import io.jmix.email.entity.SendingMessage;
 import io.jmix.email.repository.SendingAttachmentRepository;
 import io.jmix.email.repository.SendingMessageRepository;
+import jakarta.annotation.Resource;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.time.DateUtils;
+import org.hibernate.Session;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @Component("email_EmailDataProvider")
 public class EmailDataProviderImpl implements EmailDataProvider {
@@ -64,19 +84,46 @@ public class EmailDataProviderImpl implements EmailDataProvider {
     @Autowired
     private SendingAttachmentRepository sendingAttachmentRepository;
 
+    @Resource(name = "mailFileStorageTaskExecutor")
+    private TaskExecutor fileStorageTaskExecutor;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private TransactionTemplate transaction;
+
+    private String nodeId;
+
+    @Autowired
+    protected void setTransaction(PlatformTransactionManager transactionManager) {
+        transaction = new TransactionTemplate(transactionManager);
+    }
+
+    @Transactional
     @Override
     public List<SendingMessage> loadEmailsToSend() {
-        Date sendTimeoutTime = DateUtils.addSeconds(new Date(), -emailerProperties.getSendingTimeoutSec());
-        List<SendingMessage> resList = sendingMessageRepository.findByStatusAndTime(SendingStatus.QUEUE.getId(), SendingStatus.SENDING.getId(), sendTimeoutTime);
+        Date now = new Date();
+        Date sendTimeoutTime = DateUtils.addSeconds(now, -emailerProperties.getSendingTimeoutSec());
+        List<SendingMessage> resList = sendingMessageRepository.findByStatusAndTimeForUpdate(
+                SendingStatus.QUEUE.getId(), SendingStatus.SENDING.getId(), sendTimeoutTime,
+                PageRequest.of(0, Math.max(emailerProperties.getMessageQueueCapacity(), 1)));
 
-        List<SendingMessage> emailsToSend = new ArrayList<>();
+        String nodeId = getNodeId();
         resList.forEach(msg -> {
             msg.setStatus(SendingStatus.SENDING.getId());
-            emailsToSend.add(msg);
+            msg.setOwnerNode(nodeId);
+            msg.setUpdateTs(now);
         });
-        emailsToSend.forEach(this::loadBodyAndAttachments);
 
-        return emailsToSend;
+        return resList;
+    }
+
+    @Override
+    public SendingMessage loadBodyAndAttachments(SendingMessage sendingMessage) {
+        SendingMessage message = sendingMessageRepository.findWithAttachmentsById(sendingMessage.getId())
+                .orElseThrow(() -> new IllegalStateException("Sending message not found: " + sendingMessage.getId()));
+        loadContent(message);
+        return message;
     }
 
     @Override
@@ -86,8 +133,11 @@ public class EmailDataProviderImpl implements EmailDataProvider {
             msg.setAttemptsMade(msg.getAttemptsMade() + 1);
             msg.setStatus(status.getId());
 
-            if (status==SendingStatus.QUEUE && shouldMarkNotSent(msg)) {
-                msg.setStatus(SendingStatus.NOT_SENT.getId());
+            if (status==SendingStatus.QUEUE) {
+                msg.setOwnerNode(null);
+                if (shouldMarkNotSent(msg)) {
+                    msg.setStatus(SendingStatus.NOT_SENT.getId());
+                }
             }
             if (status==SendingStatus.SENT) {
                 msg.setDateSent(new Date());
@@ -137,6 +187,29 @@ public class EmailDataProviderImpl implements EmailDataProvider {
         }
     }
 
+    @Override
+    public void persistMessages(List<SendingMessage> sendingMessages, SendingStatus status) {
+        int batchSize = Math.max(emailerProperties.getBulkPersistBatchSize(), 1);
+        for (List<SendingMessage> chunk : Lists.partition(sendingMessages, batchSize)) {
+            MessagePersistingContext context = new MessagePersistingContext();
+            try {
+                chunk.forEach(sendingMessage -> {
+                    if (sendingMessage.getAttemptsLimit()==null) {
+                        sendingMessage.setAttemptsLimit(emailerProperties.getDefaultSendingAttemptsLimit());
+                    }
+                    sendingMessage.setStatus(status.getId());
+                });
+                if (emailerProperties.isUseFileStorage()) {
+                    storeContentFilesConcurrently(chunk, context);
+                }
+                transaction.executeWithoutResult(txStatus -> persistSendingMessagesBatch(chunk, batchSize));
+                context.finished();
+            } finally {
+                removeOrphanFiles(context);
+            }
+        }
+    }
+
     @Override
     public void migrateEmailsToFileStorage(List<SendingMessage> messages) {
         messages.forEach(this::migrateMessage);
@@ -170,7 +243,7 @@ public class EmailDataProviderImpl implements EmailDataProvider {
 
     protected void migrateAttachment(SendingAttachment attachment) {
         attachment = sendingAttachmentRepository.getById(attachment.getId());
-        FileRef contentFile = createContentFile(null, attachment.getContent(), attachment.getName());
+        FileRef contentFile = createAttachmentContentFile(null, attachment);
         attachment.setContentFile(contentFile);
         attachment.setContent(null);
     }
@@ -189,50 +262,78 @@ public class EmailDataProviderImpl implements EmailDataProvider {
         return res;
     }
 
-    protected void loadBodyAndAttachments(SendingMessage message) {
+    /**
+     * Loads body text of the message. Attachments stored in file storage are not loaded, their content is
+     * streamed from file storage when the message is sent.
+     */
+    protected void loadContent(SendingMessage message) {
         try {
             if (message.getContentTextFile()!=null) {
                 byte[] bodyContent = IOUtils.toByteArray(getFileStorage().openStream(message.getContentTextFile()));
                 String body = bodyTextFromByteArray(bodyContent);
                 message.setContentText(body);
             }
-
-            for (SendingAttachment attachment : message.getAttachments()) {
-                if (attachment.getContentFile()!=null) {
-                    byte[] content = IOUtils.toByteArray(getFileStorage().openStream(attachment.getContentFile()));
-                    attachment.setContent(content);
-                }
-            }
         } catch (IOException e) {
-            log.error("Failed to load body or attachments for {}", message);
+            log.error("Failed to load body for {}", message, e);
         }
     }
 
     protected void persistSendingMessage(SendingMessage message, MessagePersistingContext context) {
-        boolean useFileStorage = emailerProperties.isUseFileStorage();
-
-        if (useFileStorage) {
-            byte[] bodyBytes = bodyTextToBytes(message);
-
-            String fileName = getFileName(message);
-            FileRef contentTextFile = createContentFile(context, bodyBytes, fileName);
-            message.setContentTextFile(contentTextFile);
-            message.setContentText(null);
+        if (emailerProperties.isUseFileStorage()) {
+            storeContentFiles(message, context);
         }
 
         sendingMessageRepository.saveAndFlush(message);
 
-        message.getAttachments().forEach(attachment -> {
-            if (useFileStorage) {
-                FileRef contentFile = createContentFile(context, attachment.getContent(), attachment.getName());
-                attachment.setContentFile(contentFile);
-                attachment.setContent(null);
-            }
+        message.getAttachments().forEach(sendingAttachmentRepository::saveAndFlush);
+    }
+
+    /**
+     * Inserts messages and their attachments using JDBC batching, must be invoked in a transaction.
+     */
+    protected void persistSendingMessagesBatch(List<SendingMessage> messages, int batchSize) {
+        entityManager.unwrap(Session.class).setJdbcBatchSize(batchSize);
+
+        sendingMessageRepository.saveAll(messages);
+        sendingAttachmentRepository.saveAll(messages.stream()
+                .flatMap(message -> message.getAttachments().stream())
+                .collect(Collectors.toList()));
+        entityManager.flush();
+    }
+
+    /**
+     * Moves body text and attachments data of the message to file storage.
+     */
+    protected void storeContentFiles(SendingMessage message, MessagePersistingContext context) {
+        byte[] bodyBytes = bodyTextToBytes(message);
 
-            sendingAttachmentRepository.saveAndFlush(attachment);
+        String fileName = getFileName(message);
+        FileRef contentTextFile = createContentFile(context, bodyBytes, fileName);
+        message.setContentTextFile(contentTextFile);
+        message.setContentText(null);
+
+        message.getAttachments().forEach(attachment -> {
+            FileRef contentFile = createAttachmentContentFile(context, attachment);
+            attachment.setContentFile(contentFile);
+            attachment.setContent(null);
         });
     }
 
+    protected void storeContentFilesConcurrently(List<SendingMessage> messages, MessagePersistingContext context) {
+        CompletableFuture<?>[] futures = messages.stream()
+                .map(message -> CompletableFuture.runAsync(() -> storeContentFiles(message, context),
+                        fileStorageTaskExecutor))
+                .toArray(CompletableFuture[]::new);
+        try {
+            CompletableFuture.allOf(futures).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
     protected FileRef createContentFile(@Nullable MessagePersistingContext context, byte[] bodyBytes, String fileName) {
         FileRef contentTextFile = getFileStorage().saveStream(fileName, new ByteArrayInputStream(bodyBytes));
         if (context!=null) {
@@ -241,6 +342,70 @@ public class EmailDataProviderImpl implements EmailDataProvider {
         return contentTextFile;
     }
 
+    /**
+     * Stores attachment data in file storage or reuses the file of a previously stored attachment with the same
+     * content hash.
+     */
+    protected FileRef createAttachmentContentFile(@Nullable MessagePersistingContext context, SendingAttachment attachment) {
+        byte[] content = attachment.getContent();
+        if (content==null) {
+            return createContentFile(context, null, attachment.getName());
+        }
+
+        String contentHash = hashContent(content);
+        attachment.setContentHash(contentHash);
+
+        if (context==null) {
+            return findOrCreateAttachmentContentFile(null, contentHash, attachment);
+        }
+        // the same data attached to several messages of one batch is written once, by the first thread that needs it;
+        // the file is not created inside the map operation so that other hashes are not blocked by the storage I/O
+        CompletableFuture<FileRef> file = new CompletableFuture<>();
+        CompletableFuture<FileRef> existing = context.filesByHash.putIfAbsent(contentHash, file);
+        if (existing!=null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        try {
+            FileRef created = findOrCreateAttachmentContentFile(context, contentHash, attachment);
+            file.complete(created);
+            return created;
+        } catch (Throwable e) {
+            file.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    protected FileRef findOrCreateAttachmentContentFile(@Nullable MessagePersistingContext context, String contentHash,
+                                                        SendingAttachment attachment) {
+        String storageName = getFileStorage().getStorageName();
+        // files of the same content may be kept in several storages, only a file of the current one is reused
+        FileRef existingFile = sendingAttachmentRepository.findContentFilesByContentHash(contentHash).stream()
+                .filter(fileRef -> storageName.equals(fileRef.getStorageName()))
+                .findFirst()
+                .orElse(null);
+        if (existingFile!=null) {
+            log.debug("Reusing file {} for attachment '{}'", existingFile, attachment.getName());
+            return existingFile;
+        }
+        return createContentFile(context, attachment.getContent(), attachment.getName());
+    }
+
+    protected String hashContent(byte[] content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
     protected String getFileName(SendingMessage msg) {
         return String.format("Email_%s.%s", msg.getId(), BODY_FILE_EXTENSION);
     }
@@ -254,7 +419,8 @@ public class EmailDataProviderImpl implements EmailDataProvider {
     }
 
     protected static class MessagePersistingContext {
-        public final List<FileRef> files = new ArrayList<>();
+        public final List<FileRef> files = Collections.synchronizedList(new ArrayList<>());
+        public final Map<String, CompletableFuture<FileRef>> filesByHash = new ConcurrentHashMap<>();
 
         public void finished() {
             files.clear();
@@ -271,6 +437,16 @@ public class EmailDataProviderImpl implements EmailDataProvider {
         });
     }
 
+    /**
+     * Returns identifier of the current node which is stored in claimed messages.
+     */
+    protected String getNodeId() {
+        if (nodeId==null) {
+            nodeId = ManagementFactory.getRuntimeMXBean().getName();
+        }
+        return nodeId;
+    }
+
     protected FileStorage getFileStorage() {
         if (fileStorage==null) {
             fileStorage = fileStorageLocator.getDefault();
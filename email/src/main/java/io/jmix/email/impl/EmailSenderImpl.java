@@ -19,6 +19,10 @@ package io.jmix.email.impl;
 import com.google.common.base.CharMatcher;
 import com.google.common.base.Splitter;
 import io.jmix.core.CoreProperties;
+import io.jmix.core.filestore.FileRef;
+import io.jmix.core.filestore.FileStorage;
+import io.jmix.core.filestore.FileStorageException;
+import io.jmix.core.filestore.FileStorageLocator;
 import io.jmix.core.filestore.FileTypesHelper;
 import io.jmix.email.EmailHeader;
 import io.jmix.email.EmailSender;
@@ -31,6 +35,7 @@ import jakarta.activation.DataSource;
 import jakarta.mail.Message;
 import jakarta.mail.MessagingException;
 import jakarta.mail.Part;
+import jakarta.mail.SendFailedException;
 import jakarta.mail.internet.InternetAddress;
 import jakarta.mail.internet.MimeBodyPart;
 import jakarta.mail.internet.MimeMessage;
@@ -48,6 +53,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Component;
 
@@ -65,17 +71,44 @@ public class EmailSenderImpl implements EmailSender {
     @Autowired
     protected MeterRegistry meterRegistry;
 
+    @Autowired
+    protected SmtpTransportPool transportPool;
+
+    @Autowired
+    protected FileStorageLocator fileStorageLocator;
+
     @Override
     public void sendEmail(SendingMessage sendingMessage) throws MessagingException {
         MimeMessage msg = createMimeMessage(sendingMessage);
 
         Timer.Sample sample = Timer.start(meterRegistry);
-        mailSender.send(msg);
+        if (transportPool.isEnabled()) {
+            sendPooled(msg);
+        } else {
+            mailSender.send(msg);
+        }
         sample.stop(meterRegistry.timer("jmix.EmailSender.send"));
 
         log.info("Email '{}' to '{}' has been sent successfully", msg.getSubject(), sendingMessage.getAddress());
     }
 
+    protected void sendPooled(MimeMessage msg) throws MessagingException {
+        SmtpTransportPool.PooledTransport transport = transportPool.borrow();
+        boolean broken = false;
+        try {
+            transport.send(msg);
+        } catch (MessagingException e) {
+            // rejected recipients don't break the SMTP session, other errors do
+            broken = !(e instanceof SendFailedException);
+            throw new MailSendException("Failed to send email", e);
+        } catch (RuntimeException e) {
+            broken = true;
+            throw e;
+        } finally {
+            transportPool.release(transport, broken);
+        }
+    }
+
     protected MimeMessage createMimeMessage(SendingMessage sendingMessage) throws MessagingException {
         MimeMessage msg = mailSender.createMimeMessage();
         assignRecipient(Message.RecipientType.TO, sendingMessage.getAddress(), msg);
@@ -163,7 +196,11 @@ public class EmailSenderImpl implements EmailSender {
     }
 
     protected MimeBodyPart createAttachmentPart(SendingAttachment attachment) throws MessagingException {
-        DataSource source = new MyByteArrayDataSource(attachment.getContent());
+        boolean streamed = attachment.getContent()==null && attachment.getContentFile()!=null;
+        DataSource source = streamed
+                ? new FileStorageDataSource(fileStorageLocator.getByName(attachment.getContentFile().getStorageName()),
+                attachment.getContentFile())
+                : new MyByteArrayDataSource(attachment.getContent());
 
         String mimeType = FileTypesHelper.getMIMEType(attachment.getName());
 
@@ -183,6 +220,10 @@ public class EmailSenderImpl implements EmailSender {
         attachmentPart.setHeader("Content-Type", contentTypeValue);
         attachmentPart.setFileName(attachment.getName());
         attachmentPart.setDisposition(disposition);
+        if (streamed) {
+            // avoid reading the whole file once more just to detect the transfer encoding
+            attachmentPart.setHeader("Content-Transfer-Encoding", "base64");
+        }
 
         return attachmentPart;
     }
@@ -229,4 +270,42 @@ public class EmailSenderImpl implements EmailSender {
             return null;
         }
     }
+
+    /**
+     * Data source which streams attachment content from file storage each time the message is written,
+     * so the content is never held in memory as a whole.
+     */
+    protected static class FileStorageDataSource implements DataSource {
+        private final FileStorage fileStorage;
+        private final FileRef fileRef;
+
+        public FileStorageDataSource(FileStorage fileStorage, FileRef fileRef) {
+            this.fileStorage = fileStorage;
+            this.fileRef = fileRef;
+        }
+
+        @Override
+        public String getContentType() {
+            return "application/octet-stream";
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            try {
+                return fileStorage.openStream(fileRef);
+            } catch (FileStorageException e) {
+                throw new IOException("Unable to open attachment " + fileRef, e);
+            }
+        }
+
+        @Override
+        public String getName() {
+            return fileRef.getFileName();
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            return null;
+        }
+    }
 }
\ No newline at end of file
@@ -33,6 +33,7 @@ import io.jmix.security.authentication.SystemAuthenticator;
 import jakarta.annotation.Resource;
 import jakarta.mail.internet.AddressException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -117,6 +118,17 @@ public class EmailerImpl implements Emailer {
         return message;
     }
 
+    @Override
+    public List<SendingMessage> sendEmailsAsync(Collection<EmailInfo> infos) {
+        List<SendingMessage> messages = new ArrayList<>(infos.size());
+        for (EmailInfo info : infos) {
+            prepareEmailInfo(info);
+            messages.add(convertToSendingMessage(info, null, null));
+        }
+        emailDataProvider.persistMessages(messages, SendingStatus.QUEUE);
+        return messages;
+    }
+
     protected void prepareEmailInfo(EmailInfo emailInfo) {
         if (StringUtils.isBlank(emailInfo.getAddresses())) {
             throw new IllegalArgumentException("Addresses are not specified");
@@ -185,13 +197,16 @@ public class EmailerImpl implements Emailer {
 
     protected void sendSendingMessage(SendingMessage sendingMessage) {
         Objects.requireNonNull(sendingMessage, "sendingMessage is null");
-        Objects.requireNonNull(sendingMessage.getAddress(), "sendingMessage.address is null");
-        Objects.requireNonNull(sendingMessage.getSubject(), "sendingMessage.subject is null");
-        Objects.requireNonNull(sendingMessage.getContentText(), "sendingMessage.contentText is null");
-        Objects.requireNonNull(sendingMessage.getFrom(), "sendingMessage.from is null");
+        // failures to load the message count as attempts, so that a broken message ends up NOT_SENT
         try {
-            emailSender.sendEmail(sendingMessage);
-            emailDataProvider.updateStatus(sendingMessage, SendingStatus.SENT);
+            SendingMessage loadedMessage = emailDataProvider.loadBodyAndAttachments(sendingMessage);
+            Objects.requireNonNull(loadedMessage.getAddress(), "sendingMessage.address is null");
+            Objects.requireNonNull(loadedMessage.getSubject(), "sendingMessage.subject is null");
+            Objects.requireNonNull(loadedMessage.getContentText(), "sendingMessage.contentText is null");
+            Objects.requireNonNull(loadedMessage.getFrom(), "sendingMessage.from is null");
+
+            emailSender.sendEmail(loadedMessage);
+            emailDataProvider.updateStatus(loadedMessage, SendingStatus.SENT);
         } catch (Exception e) {
             log.warn("Unable to send email to '{}'", sendingMessage.getAddress(), e);
             SendingStatus newStatus = isNeedToRetry(e) ? SendingStatus.QUEUE:SendingStatus.NOT_SENT;
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.jmix.email.impl;
+
+import io.jmix.email.EmailerProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.stereotype.Component;
+
+/**
+ * Pool of connected SMTP {@link Transport}s which are reused to send many messages without repeating
+ * the connection, TLS handshake and authentication for every message.
+ * <p>
+ * The pool is enabled if {@link EmailerProperties#getSmtpPoolSize()} is greater than zero and the application
+ * {@link JavaMailSender} is a {@link JavaMailSenderImpl}. Idle connections are checked with {@code NOOP} before
+ * reuse and closed after {@link EmailerProperties#getSmtpPoolIdleTimeoutSec()} seconds of inactivity.
+ */
+@Component("email_SmtpTransportPool")
+public class SmtpTransportPool {
+
+    private static final Logger log = LoggerFactory.getLogger(SmtpTransportPool.class);
+
+    @Autowired
+    protected EmailerProperties emailerProperties;
+
+    @Autowired
+    protected JavaMailSender mailSender;
+
+    @Autowired
+    protected MeterRegistry meterRegistry;
+
+    protected final BlockingDeque<PooledTransport> idleTransports = new LinkedBlockingDeque<>();
+
+    protected Semaphore permits;
+
+    protected volatile boolean closed;
+
+    @PostConstruct
+    protected void init() {
+        permits = new Semaphore(Math.max(emailerProperties.getSmtpPoolSize(), 0), true);
+    }
+
+    /**
+     * @return true if messages should be sent through the pool
+     */
+    public boolean isEnabled() {
+        return emailerProperties.getSmtpPoolSize() > 0 && mailSender instanceof JavaMailSenderImpl;
+    }
+
+    /**
+     * Takes a connected transport from the pool, opening a new connection if there is no reusable one.
+     * Waits if all connections are in use. The transport must be returned by {@link #release(PooledTransport, boolean)}.
+     */
+    public PooledTransport borrow() throws MessagingException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted while waiting for SMTP connection", e);
+        }
+        sample.stop(meterRegistry.timer("jmix.EmailSender.pool.borrow"));
+
+        try {
+            PooledTransport transport;
+            while ((transport = idleTransports.pollFirst()) != null) {
+                if (isReusable(transport)) {
+                    return transport;
+                }
+                transport.close();
+            }
+            return connect();
+        } catch (MessagingException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the transport to the pool.
+     *
+     * @param transport transport obtained by {@link #borrow()}
+     * @param broken    whether the connection failed and must not be reused
+     */
+    public void release(PooledTransport transport, boolean broken) {
+        try {
+            if (broken || closed
+                    || transport.getSentCount() >= emailerProperties.getSmtpMessagesPerConnection()) {
+                transport.close();
+            } else {
+                transport.touch();
+                idleTransports.offerFirst(transport);
+            }
+            evictIdle();
+        } finally {
+            permits.release();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        closed = true;
+        PooledTransport transport;
+        while ((transport = idleTransports.pollFirst()) != null) {
+            transport.close();
+        }
+    }
+
+    protected PooledTransport connect() throws MessagingException {
+        JavaMailSenderImpl senderImpl = (JavaMailSenderImpl) mailSender;
+        Transport transport = senderImpl.getSession().getTransport(senderImpl.getProtocol());
+        String username = senderImpl.getUsername();
+        String password = senderImpl.getPassword();
+        // same as JavaMailSenderImpl.connectTransport: empty values usually come from unresolved placeholders
+        if ("".equals(username)) {
+            username = null;
+            if ("".equals(password)) {
+                password = null;
+            }
+        }
+        transport.connect(senderImpl.getHost(), senderImpl.getPort(), username, password);
+        meterRegistry.counter("jmix.EmailSender.pool.connect").increment();
+        log.debug("Opened SMTP connection to {}:{}", senderImpl.getHost(), senderImpl.getPort());
+        return new PooledTransport(transport);
+    }
+
+    protected boolean isReusable(PooledTransport transport) {
+        long idleMillis = System.currentTimeMillis() - transport.getLastUsed();
+        if (idleMillis > TimeUnit.SECONDS.toMillis(emailerProperties.getSmtpPoolIdleTimeoutSec())) {
+            return false;
+        }
+        // SMTPTransport checks the connection with NOOP
+        return transport.getTransport().isConnected();
+    }
+
+    /**
+     * Closes connections which have not been used for longer than the idle timeout. The least recently used
+     * connections are at the tail of the deque.
+     */
+    protected void evictIdle() {
+        long deadline = System.currentTimeMillis()
+                - TimeUnit.SECONDS.toMillis(emailerProperties.getSmtpPoolIdleTimeoutSec());
+        PooledTransport transport;
+        while ((transport = idleTransports.peekLast()) != null && transport.getLastUsed() < deadline) {
+            if (idleTransports.removeLastOccurrence(transport)) {
+                transport.close();
+            }
+        }
+    }
+
+    /**
+     * Connected transport with usage statistics.
+     */
+    public static class PooledTransport {
+        private final Transport transport;
+        private int sentCount;
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        public PooledTransport(Transport transport) {
+            this.transport = transport;
+        }
+
+        public Transport getTransport() {
+            return transport;
+        }
+
+        public int getSentCount() {
+            return sentCount;
+        }
+
+        public long getLastUsed() {
+            return lastUsed;
+        }
+
+        public void send(MimeMessage message) throws MessagingException {
+            sentCount++;
+            transport.sendMessage(message, message.getAllRecipients());
+        }
+
+        protected void touch() {
+            lastUsed = System.currentTimeMillis();
+        }
+
+        protected void close() {
+            try {
+                transport.close();
+            } catch (MessagingException e) {
+                log.debug("Failed to close SMTP connection", e);
+            }
+        }
+    }
+}
@@ -1,9 +1,14 @@
 package io.jmix.email.repository;
 
+import io.jmix.core.filestore.FileRef;
 import io.jmix.email.entity.SendingAttachment;
 import io.jmix.email.entity.SendingMessage;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -14,4 +19,35 @@ import org.springframework.stereotype.Repository;
  */
 @Repository
 public interface SendingAttachmentRepository extends JpaRepository<SendingAttachment, UUID> {
+
+    /**
+     * Returns the distinct files of attachments with the given content hash, at most one per file storage
+     * unless the same content has been stored concurrently.
+     */
+    @Query("select distinct a.contentFile from email_SendingAttachment a" +
+            " where a.contentHash = :contentHash and a.contentFile is not null")
+    List<FileRef> findContentFilesByContentHash(String contentHash);
+
+    @Query("select a.contentFile as contentFile, a.contentHash as contentHash from email_SendingAttachment a" +
+            " where a.message.id in :messageIds and a.contentFile is not null")
+    List<ContentFileView> findContentFilesByMessageIds(Collection<UUID> messageIds);
+
+    @Query("select distinct a.contentHash from email_SendingAttachment a where a.contentHash in :contentHashes")
+    List<String> findReferencedContentHashes(Collection<String> contentHashes);
+
+    @Query("select distinct a.contentFile from email_SendingAttachment a where a.contentFile in :contentFiles")
+    List<FileRef> findReferencedContentFiles(Collection<FileRef> contentFiles);
+
+    @Modifying
+    @Query("delete from email_SendingAttachment a where a.message.id in :messageIds")
+    int deleteByMessageIds(Collection<UUID> messageIds);
+
+    /**
+     * Projection of the attachment file reference.
+     */
+    interface ContentFileView {
+        FileRef getContentFile();
+
+        String getContentHash();
+    }
 }
@@ -1,11 +1,20 @@
 package io.jmix.email.repository;
 
+import io.jmix.core.filestore.FileRef;
 import io.jmix.email.entity.SendingMessage;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -18,10 +27,37 @@ import org.springframework.stereotype.Repository;
 public interface SendingMessageRepository extends JpaRepository<SendingMessage, UUID> {
     List<SendingMessage> findByImportantAndCreateTsLessThan(boolean important, Date date);
 
+    /**
+     * Returns a page of identifiers of messages created before the given date, following the {@code lastId} key.
+     */
+    @Query("select sm.id from email_SendingMessage sm" +
+            " where sm.important = :important and sm.createTs < :date and sm.id > :lastId" +
+            " order by sm.id")
+    List<UUID> findIdsToDelete(boolean important, Date date, UUID lastId, Pageable pageable);
 
+    @Query("select sm.contentTextFile from email_SendingMessage sm" +
+            " where sm.id in :ids and sm.contentTextFile is not null")
+    List<FileRef> findContentTextFiles(Collection<UUID> ids);
+
+    @Modifying
+    @Query("delete from email_SendingMessage sm where sm.id in :ids")
+    int deleteByIds(Collection<UUID> ids);
+
+
+    /**
+     * Locks a page of queued (or stuck in sending) messages for update. Rows already locked by another
+     * transaction are skipped ({@code FOR UPDATE SKIP LOCKED} on databases supporting it), so concurrent
+     * nodes never claim the same message.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
     @Query("select sm from email_SendingMessage sm" +
             " where sm.status = :statusQueue or (sm.status = :statusSending and sm.updateTs < :time)" +
             " order by sm.createTs")
-    List<SendingMessage> findByStatusAndTime(Integer statusQueue, Integer statusSending, Date time);
+    List<SendingMessage> findByStatusAndTimeForUpdate(Integer statusQueue, Integer statusSending, Date time,
+                                                      Pageable pageable);
+
+    @Query("select sm from email_SendingMessage sm left join fetch sm.attachments where sm.id = :id")
+    Optional<SendingMessage> findWithAttachmentsById(UUID id);
 
 }
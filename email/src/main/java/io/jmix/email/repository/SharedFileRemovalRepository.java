@@ -0,0 +1,36 @@
+/*
+ * Copyright 2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.jmix.email.repository;
+
+import io.jmix.email.entity.SharedFileRemoval;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface SharedFileRemovalRepository extends JpaRepository<SharedFileRemoval, UUID> {
+
+    /**
+     * Returns a page of files which became unreferenced before the given date, the oldest first.
+     */
+    @Query("select r from email_SharedFileRemoval r where r.createTs <= :date order by r.createTs")
+    List<SharedFileRemoval> findCreatedBefore(Date date, Pageable pageable);
+}
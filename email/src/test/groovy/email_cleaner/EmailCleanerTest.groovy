@@ -102,6 +102,37 @@ class EmailCleanerTest extends EmailSpecification {
         fileRefs.every { fileStorage.fileExists(it) }
     }
 
+    def 'attachment file shared by several messages is deleted with the last of them'() {
+        EmailerConfigPropertiesAccess.setCleanFileStorage(emailerProperties, true)
+
+        when:
+        EmailInfo importantInfo = createEmailInfo(true)
+        addEmailAttachment(importantInfo, "sharedContent")
+        def importantMessage = emailer.sendEmailAsync(importantInfo)
+
+        EmailInfo nonImportantInfo = createEmailInfo(false)
+        addEmailAttachment(nonImportantInfo, "sharedContent")
+        def nonImportantMessage = emailer.sendEmailAsync(nonImportantInfo)
+
+        def sharedFile = importantMessage.attachments[0].contentFile
+
+        importantMessage.createTs = Date.from(timeSource.now().minusHours(25).toInstant())
+        dataManager.save(importantMessage)
+        emailCleaner.deleteOldEmails()
+
+        then:
+        nonImportantMessage.attachments[0].contentFile == sharedFile
+        fileStorage.fileExists(sharedFile)
+
+        when:
+        nonImportantMessage.createTs = Date.from(timeSource.now().minusHours(25).toInstant())
+        dataManager.save(nonImportantMessage)
+        emailCleaner.deleteOldEmails()
+
+        then:
+        !fileStorage.fileExists(sharedFile)
+    }
+
     private List<SendingMessage> loadAllSendingMessages() {
         return dataManager.load(SendingMessage).all().hint(PersistenceHints.SOFT_DELETION, false).list();
     }
@@ -118,11 +149,11 @@ class EmailCleanerTest extends EmailSpecification {
         def messagesToSend = []
 
         EmailInfo emailInfo1 = createEmailInfo(false)
-        addEmailAttachment(emailInfo1)
+        addEmailAttachment(emailInfo1, "someContent")
         messagesToSend << emailInfo1
 
         EmailInfo emailInfo2 = createEmailInfo(true)
-        addEmailAttachment(emailInfo2)
+        addEmailAttachment(emailInfo2, "someImportantContent")
         messagesToSend << emailInfo2
 
         EmailInfo emailInfo3 = createEmailInfo(false)
@@ -141,9 +172,9 @@ class EmailCleanerTest extends EmailSpecification {
                 .build()
     }
 
-    private static void addEmailAttachment(EmailInfo emailInfo) {
+    private static void addEmailAttachment(EmailInfo emailInfo, String content) {
         List<EmailAttachment> attachments = emailInfo.attachments
-        EmailAttachment emailAttachment = new EmailAttachment("someContent".bytes, "someName")
+        EmailAttachment emailAttachment = new EmailAttachment(content.bytes, "someName")
         if (attachments == null) {
             attachments = new ArrayList<>()
             attachments.add(emailAttachment)
@@ -47,4 +47,12 @@ public class EmailerConfigPropertiesAccess {
     public static void setCleanFileStorage(EmailerProperties properties, boolean cleanFileStorage) {
         properties.cleanFileStorage = cleanFileStorage;
     }
+
+    public static void setSharedFileRemovalDelaySec(EmailerProperties properties, int sharedFileRemovalDelaySec) {
+        properties.sharedFileRemovalDelaySec = sharedFileRemovalDelaySec;
+    }
+
+    public static void setBulkPersistBatchSize(EmailerProperties properties, int bulkPersistBatchSize) {
+        properties.bulkPersistBatchSize = bulkPersistBatchSize;
+    }
 }
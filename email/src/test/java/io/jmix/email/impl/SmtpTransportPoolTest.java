@@ -0,0 +1,239 @@
+/*
+ * Copyright 2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.jmix.email.impl;
+
+import io.jmix.email.EmailerProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.Address;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Provider;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+import jakarta.mail.URLName;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+public class SmtpTransportPoolTest {
+
+    private static final List<RecordingTransport> transports = new CopyOnWriteArrayList<>();
+
+    private static volatile boolean failConnect;
+
+    private JavaMailSenderImpl mailSender;
+
+    @BeforeEach
+    public void setUp() throws MessagingException {
+        transports.clear();
+        failConnect = false;
+
+        Session session = Session.getInstance(new Properties());
+        session.setProvider(new Provider(Provider.Type.TRANSPORT, "smtp",
+                RecordingTransport.class.getName(), "test", "1.0"));
+
+        mailSender = new JavaMailSenderImpl();
+        mailSender.setSession(session);
+        mailSender.setHost("localhost");
+        mailSender.setPort(2525);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        failConnect = false;
+    }
+
+    @Test
+    public void testEmptyCredentialsPassedAsNull() throws MessagingException {
+        mailSender.setUsername("");
+        mailSender.setPassword("");
+        SmtpTransportPool pool = createPool(1, 100);
+
+        SmtpTransportPool.PooledTransport transport = pool.borrow();
+        pool.release(transport, false);
+
+        assertEquals(1, transports.size());
+        assertNull(transports.get(0).user);
+        assertNull(transports.get(0).password);
+    }
+
+    @Test
+    public void testCredentialsPassedToTransport() throws MessagingException {
+        mailSender.setUsername("user");
+        mailSender.setPassword("secret");
+        SmtpTransportPool pool = createPool(1, 100);
+
+        SmtpTransportPool.PooledTransport transport = pool.borrow();
+        pool.release(transport, false);
+
+        RecordingTransport connected = transports.get(0);
+        assertEquals("localhost", connected.host);
+        assertEquals(2525, connected.port);
+        assertEquals("user", connected.user);
+        assertEquals("secret", connected.password);
+    }
+
+    @Test
+    public void testConnectionReused() throws MessagingException {
+        SmtpTransportPool pool = createPool(2, 100);
+
+        SmtpTransportPool.PooledTransport first = pool.borrow();
+        first.send(createMessage());
+        pool.release(first, false);
+
+        SmtpTransportPool.PooledTransport second = pool.borrow();
+        second.send(createMessage());
+        pool.release(second, false);
+
+        assertSame(first, second);
+        assertEquals(1, transports.size());
+        assertEquals(2, transports.get(0).sentCount);
+    }
+
+    @Test
+    public void testBrokenConnectionClosed() throws MessagingException {
+        SmtpTransportPool pool = createPool(1, 100);
+
+        SmtpTransportPool.PooledTransport first = pool.borrow();
+        pool.release(first, true);
+        assertFalse(first.getTransport().isConnected());
+
+        SmtpTransportPool.PooledTransport second = pool.borrow();
+        pool.release(second, false);
+
+        assertNotSame(first, second);
+        assertEquals(2, transports.size());
+    }
+
+    @Test
+    public void testConnectionClosedAfterMessagesPerConnection() throws MessagingException {
+        SmtpTransportPool pool = createPool(1, 2);
+
+        SmtpTransportPool.PooledTransport first = pool.borrow();
+        first.send(createMessage());
+        pool.release(first, false);
+        assertTrue(first.getTransport().isConnected());
+
+        first = pool.borrow();
+        first.send(createMessage());
+        pool.release(first, false);
+        assertFalse(first.getTransport().isConnected());
+
+        SmtpTransportPool.PooledTransport second = pool.borrow();
+        pool.release(second, false);
+
+        assertNotSame(first, second);
+        assertEquals(2, transports.size());
+    }
+
+    @Test
+    public void testPermitReleasedOnConnectFailure() throws MessagingException {
+        SmtpTransportPool pool = createPool(1, 100);
+
+        failConnect = true;
+        assertThrows(MessagingException.class, pool::borrow);
+        assertEquals(1, pool.permits.availablePermits());
+
+        failConnect = false;
+        SmtpTransportPool.PooledTransport transport = pool.borrow();
+        assertEquals(0, pool.permits.availablePermits());
+        pool.release(transport, false);
+        assertEquals(1, pool.permits.availablePermits());
+    }
+
+    @Test
+    public void testCloseClosesIdleConnections() throws MessagingException {
+        SmtpTransportPool pool = createPool(2, 100);
+
+        SmtpTransportPool.PooledTransport first = pool.borrow();
+        SmtpTransportPool.PooledTransport second = pool.borrow();
+        pool.release(first, false);
+        pool.close();
+        pool.release(second, false);
+
+        assertFalse(first.getTransport().isConnected());
+        assertFalse(second.getTransport().isConnected());
+    }
+
+    private SmtpTransportPool createPool(int poolSize, int messagesPerConnection) {
+        SmtpTransportPool pool = new SmtpTransportPool();
+        pool.emailerProperties = new EmailerProperties("DoNotReply@localhost", 2, 100, 10, 240,
+                "admin@localhost", false, false, "admin", "0 * * * * ?", 0, 0, "0 0 0 * * ?", false, 1000, 3600,
+                poolSize, messagesPerConnection, 60, 100);
+        pool.mailSender = mailSender;
+        pool.meterRegistry = new SimpleMeterRegistry();
+        pool.init();
+        assertTrue(pool.isEnabled());
+        return pool;
+    }
+
+    private MimeMessage createMessage() throws MessagingException {
+        MimeMessage message = new MimeMessage(mailSender.getSession());
+        message.setRecipient(Message.RecipientType.TO, new InternetAddress("testemail@example.com"));
+        message.setSubject("Test");
+        message.setText("Test");
+        return message;
+    }
+
+    /**
+     * Transport registered in the test session instead of the SMTP one. Records connection parameters
+     * and sent messages.
+     */
+    public static class RecordingTransport extends Transport {
+        private String host;
+        private int port;
+        private String user;
+        private String password;
+        private int sentCount;
+
+        public RecordingTransport(Session session, URLName urlName) {
+            super(session, urlName);
+        }
+
+        @Override
+        public synchronized void connect(String host, int port, String user, String password)
+                throws MessagingException {
+            if (failConnect) {
+                throw new MessagingException("Smtp server not available");
+            }
+            this.host = host;
+            this.port = port;
+            this.user = user;
+            this.password = password;
+            setConnected(true);
+            transports.add(this);
+        }
+
+        @Override
+        public void sendMessage(Message message, Address[] addresses) {
+            sentCount++;
+        }
+    }
+}
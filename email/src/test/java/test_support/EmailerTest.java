@@ -19,7 +19,9 @@ package test_support;
 import com.google.common.collect.Lists;
 import io.jmix.core.filestore.FileStorage;
 import io.jmix.core.filestore.FileStorageLocator;
+import io.jmix.core.filestore.FileRef;
 import io.jmix.email.EmailAttachment;
+import io.jmix.email.EmailCleaner;
 import io.jmix.email.EmailDataProvider;
 import io.jmix.email.EmailException;
 import io.jmix.email.EmailInfo;
@@ -30,7 +32,9 @@ import io.jmix.email.EmailerProperties;
 import io.jmix.email.SendingStatus;
 import io.jmix.email.entity.SendingAttachment;
 import io.jmix.email.entity.SendingMessage;
+import io.jmix.email.repository.SendingAttachmentRepository;
 import io.jmix.email.repository.SendingMessageRepository;
+import io.jmix.email.repository.SharedFileRemovalRepository;
 import jakarta.mail.Message;
 import jakarta.mail.MessagingException;
 import jakarta.mail.Part;
@@ -40,10 +44,19 @@ import jakarta.mail.internet.MimeMultipart;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.DateUtils;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -79,6 +92,15 @@ public class EmailerTest {
     @Autowired
     private FileStorageLocator fileStorageLocator;
 
+    @Autowired
+    private EmailCleaner emailCleaner;
+
+    @Autowired
+    private SendingAttachmentRepository sendingAttachmentRepository;
+
+    @Autowired
+    private SharedFileRemovalRepository sharedFileRemovalRepository;
+
 
     @BeforeEach
     public void setUp() throws Exception {
@@ -706,7 +728,200 @@ public class EmailerTest {
         assertByteArrayEquals(expectedBytes, actualBytes);
     }
 
+    @Test
+    public void testAsynchronousBulk() throws Exception {
+        doTestAsynchronousBulk(false);
+    }
+
+    @Test
+    public void testAsynchronousBulkFS() throws Exception {
+        doTestAsynchronousBulk(true);
+    }
+
+    /*
+     * Messages are stored in several batches, attachment files of a batch concurrently. Messages sharing
+     * an attachment must share its file.
+     */
+    private void doTestAsynchronousBulk(boolean useFs) throws Exception {
+        EmailerConfigPropertiesAccess.setUseFileStorage(emailerProperties, useFs);
+        EmailerConfigPropertiesAccess.setBulkPersistBatchSize(emailerProperties, 3);
+        testMailSender.clearBuffer();
+        try {
+            byte[] sharedContent = UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8);
+            List<EmailInfo> infos = new ArrayList<>();
+            for (int i = 0; i < 7; i++) {
+                infos.add(EmailInfoBuilder.create()
+                        .setAddresses("recipient" + i + "@example.com")
+                        .setSubject("Test " + i)
+                        .setBody("Test Email Body " + i)
+                        .setAttachments(new EmailAttachment(sharedContent, "shared.txt"),
+                                new EmailAttachment(("Own attachment " + i).getBytes(StandardCharsets.UTF_8),
+                                        "own.txt"))
+                        .build());
+            }
+            List<SendingMessage> messages = emailer.sendEmailsAsync(infos);
+            assertEquals(7, messages.size());
+
+            // not sent yet
+            assertTrue(testMailSender.isEmpty());
+            for (SendingMessage message : messages) {
+                assertEquals(SendingStatus.QUEUE, reload(message).getStatus());
+            }
+
+            if (useFs) {
+                Set<FileRef> sharedFiles = new HashSet<>();
+                Set<FileRef> ownFiles = new HashSet<>();
+                for (SendingMessage message : messages) {
+                    for (SendingAttachment attachment : findAttachments(message)) {
+                        assertNotNull(attachment.getContentFile());
+                        assertNull(attachment.getContent());
+                        ("shared.txt".equals(attachment.getName()) ? sharedFiles : ownFiles)
+                                .add(attachment.getContentFile());
+                    }
+                }
+                // written once by the first batch, reused by the next ones
+                assertEquals(1, sharedFiles.size());
+                assertEquals(7, ownFiles.size());
+            }
+
+            emailer.processQueuedEmails();
+
+            assertEquals(7, testMailSender.getBufferSize());
+            for (SendingMessage message : messages) {
+                assertEquals(SendingStatus.SENT, reload(message).getStatus());
+            }
+            for (int i = 0; i < 7; i++) {
+                MimeMessage msg = testMailSender.fetchSentEmail();
+                MimeBodyPart attachment = getFirstAttachment(msg);
+                assertEquals(new String(sharedContent, StandardCharsets.UTF_8),
+                        IOUtils.toString((InputStream) attachment.getContent(), StandardCharsets.UTF_8));
+            }
+        } finally {
+            EmailerConfigPropertiesAccess.setBulkPersistBatchSize(emailerProperties, 100);
+        }
+    }
+
+    /*
+     * Files written for a batch which fails to be stored are removed, files reused from already stored messages
+     * are kept.
+     */
+    @Test
+    public void testAsynchronousBulkFailureFS() {
+        EmailerConfigPropertiesAccess.setUseFileStorage(emailerProperties, true);
+        byte[] sharedContent = UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8);
+        SendingMessage stored = emailer.sendEmailAsync(EmailInfoBuilder.create()
+                .setAddresses("stored@example.com")
+                .setSubject("Stored")
+                .setBody("Stored")
+                .setAttachments(new EmailAttachment(sharedContent, "shared.txt"))
+                .build());
+        FileRef sharedFile = findAttachment(stored).getContentFile();
+        long messageCount = sendingMessageRepository.count();
+
+        List<EmailInfo> infos = new ArrayList<>();
+        infos.add(EmailInfoBuilder.create()
+                .setAddresses("recipient@example.com")
+                .setSubject("Test")
+                .setBody("Test Email Body")
+                .setAttachments(new EmailAttachment(sharedContent, "shared.txt"))
+                .build());
+        infos.add(EmailInfoBuilder.create()
+                .setAddresses("recipient@example.com")
+                .setSubject(StringUtils.repeat('x', SendingMessage.SUBJECT_LENGTH + 1))
+                .setBody("Test Email Body")
+                .setAttachments(new EmailAttachment("Own attachment".getBytes(StandardCharsets.UTF_8), "own.txt"))
+                .build());
+        try {
+            emailer.sendEmailsAsync(infos);
+            fail("Message with too long subject is stored");
+        } catch (RuntimeException e) {
+            // expected
+        }
+
+        assertEquals(messageCount, sendingMessageRepository.count());
+        FileStorage fileStorage = fileStorageLocator.getDefault();
+        assertTrue(fileStorage.fileExists(sharedFile));
+    }
+
+    /*
+     * A message being stored finds the shared attachment file before the cleaner deletes the last attachment
+     * referencing it, and commits its reference after that. The file must survive.
+     */
+    @Test
+    public void testSharedAttachmentFileReusedDuringCleaning() {
+        EmailerConfigPropertiesAccess.setUseFileStorage(emailerProperties, true);
+        EmailerConfigPropertiesAccess.setCleanFileStorage(emailerProperties, true);
+        EmailerConfigPropertiesAccess.setMaxAgeOfNonImportantMessages(emailerProperties, 1);
+        EmailerConfigPropertiesAccess.setSharedFileRemovalDelaySec(emailerProperties, 0);
+        try {
+            byte[] sharedContent = UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8);
+            SendingMessage oldMessage = emailer.sendEmailAsync(EmailInfoBuilder.create()
+                    .setAddresses("old@example.com")
+                    .setSubject("Old")
+                    .setBody("Old")
+                    .setAttachments(new EmailAttachment(sharedContent, "shared.txt"))
+                    .build());
+            SendingMessage newMessage = emailer.sendEmailAsync(EmailInfoBuilder.create()
+                    .setAddresses("new@example.com")
+                    .setSubject("New")
+                    .setBody("New")
+                    .setAttachments(new EmailAttachment(UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8),
+                            "other.txt"))
+                    .build());
+
+            SendingAttachment oldAttachment = findAttachment(oldMessage);
+            FileRef sharedFile = oldAttachment.getContentFile();
+            FileStorage fileStorage = fileStorageLocator.getDefault();
+
+            makeOld(oldMessage);
+            emailCleaner.deleteOldEmails();
+            assertTrue(fileStorage.fileExists(sharedFile));
+            // the pending removal is kept in the database, not in the memory of the node
+            assertEquals(1, sharedFileRemovalRepository.count());
+
+            // the concurrently stored message commits the reference found before the cleaning
+            SendingAttachment newAttachment = findAttachment(newMessage);
+            newAttachment.setContentFile(sharedFile);
+            newAttachment.setContentHash(oldAttachment.getContentHash());
+            sendingAttachmentRepository.saveAndFlush(newAttachment);
+
+            emailCleaner.deleteOldEmails();
+            assertTrue(fileStorage.fileExists(sharedFile));
+
+            // removed after the last reference is gone
+            makeOld(newMessage);
+            emailCleaner.deleteOldEmails();
+            assertTrue(fileStorage.fileExists(sharedFile));
+            emailCleaner.deleteOldEmails();
+            assertFalse(fileStorage.fileExists(sharedFile));
+            assertEquals(0, sharedFileRemovalRepository.count());
+        } finally {
+            EmailerConfigPropertiesAccess.setCleanFileStorage(emailerProperties, false);
+            EmailerConfigPropertiesAccess.setMaxAgeOfNonImportantMessages(emailerProperties, 0);
+            EmailerConfigPropertiesAccess.setSharedFileRemovalDelaySec(emailerProperties, 3600);
+        }
+    }
+
     /* Utility */
+    private List<SendingAttachment> findAttachments(SendingMessage message) {
+        return sendingAttachmentRepository.findAll().stream()
+                .filter(attachment -> attachment.getMessage().getId().equals(message.getId()))
+                .collect(Collectors.toList());
+    }
+
+    private SendingAttachment findAttachment(SendingMessage message) {
+        return sendingAttachmentRepository.findAll().stream()
+                .filter(attachment -> attachment.getMessage().getId().equals(message.getId()))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private void makeOld(SendingMessage message) {
+        SendingMessage reloaded = sendingMessageRepository.findById(message.getId()).orElseThrow();
+        reloaded.setCreateTs(DateUtils.addDays(new Date(), -2));
+        sendingMessageRepository.saveAndFlush(reloaded);
+    }
+
     private Date getDeadlineWhichDoesntMatter() {
         return DateUtils.addHours(new Date(), 2);
     }
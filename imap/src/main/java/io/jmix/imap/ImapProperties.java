@@ -38,6 +38,105 @@ public class ImapProperties {
      */
     String imapSyncCron;
 
+    /**
+     * Maximum number of pooled IMAP connections per mailbox. Connections are not pooled if 0.
+     */
+    int storePoolSize;
+
+    /**
+     * Time in seconds after which an unused pooled IMAP connection is closed.
+     */
+    int storePoolMaxIdleSeconds;
+
+    /**
+     * Interval in seconds of NOOP commands which keep unused pooled IMAP connections alive.
+     */
+    int storePoolKeepAliveSeconds;
+
+    /**
+     * Whether changes of mailbox folders are detected with IMAP IDLE instead of polling by the sync schedule.
+     * Mailboxes of servers without IDLE support are still polled.
+     */
+    boolean idleEnabled;
+
+    /**
+     * Interval in seconds after which the IDLE command is reissued, should be less than the server timeout.
+     */
+    int idleRefreshSeconds;
+
+    /**
+     * Delay in seconds before reconnecting a folder watched with IDLE after a connection failure.
+     */
+    int idleReconnectDelaySeconds;
+
+    /**
+     * Maximum number of mailboxes synchronized simultaneously by the sync schedule.
+     */
+    int syncConcurrency;
+
+    /**
+     * Maximum number of mailboxes of the same IMAP server synchronized simultaneously. Not limited if 0.
+     */
+    int syncMaxMailBoxesPerHost;
+
+    /**
+     * Maximum number of sync schedule runs skipped for a mailbox without recent changes. The number of skipped runs
+     * doubles after every synchronization which finds no changes and is reset by a change. Disabled if 0.
+     */
+    int syncMaxSkippedRuns;
+
+    /**
+     * Number of application nodes which share synchronization of mailboxes. Each mailbox is synchronized
+     * by a single node.
+     */
+    int syncNodeCount;
+
+    /**
+     * Index of this node among {@link #syncNodeCount} nodes, starting from 0.
+     */
+    int syncNodeIndex;
+
+    /**
+     * Whether downloaded attachments are copied to the default file storage, so that later downloads
+     * do not access the IMAP server.
+     */
+    boolean storeAttachments;
+
+    /**
+     * Number of folders which events are handled simultaneously. Events of a folder are handled one by one,
+     * in the order they are generated. If 0, events are handled by the thread synchronizing the mailbox.
+     */
+    int eventsParallelism;
+
+    /**
+     * Maximum number of folders waiting for events handling. Mailbox synchronization waits when it is reached.
+     */
+    int eventsQueueCapacity;
+
+    /**
+     * Number of attempts to invoke an event handler before the event is reported as not handled. Values greater
+     * than 1 deliver the same event to the handler again after a failure, so the handlers must be idempotent.
+     * An event which is not handled is only published as {@link io.jmix.imap.sync.events.ImapEventHandlingFailedEvent}
+     * and is not kept anywhere, the application has to listen to it to store or repeat the event.
+     */
+    int eventsHandlerAttempts;
+
+    /**
+     * Delay in milliseconds between attempts to invoke an event handler.
+     */
+    int eventsRetryDelayMillis;
+
+    /**
+     * Maximum number of mailboxes which decrypted passwords are kept in memory. Passwords are decrypted on every
+     * connection if 0.
+     */
+    int credentialsCacheSize;
+
+    /**
+     * Time in seconds after which a decrypted password kept in memory is discarded.
+     */
+    int credentialsCacheTtlSeconds;
+
     public ImapProperties(@DefaultValue("false") boolean trustAllCertificates,
                           @DefaultValue("100") int updateBatchSize,
                           @DefaultValue("false") boolean clearCustomFlags,
@@ -45,7 +144,25 @@ public class ImapProperties {
                           @DefaultValue("5") int timeoutSeconds,
                           @DefaultValue("20") int eventsBatchSize,
                           @DefaultValue("0 * * * * ?") String imapSyncCron,
-                          @DefaultValue("true") boolean useDefaultQuartzConfiguration) {
+                          @DefaultValue("true") boolean useDefaultQuartzConfiguration,
+                          @DefaultValue("2") int storePoolSize,
+                          @DefaultValue("300") int storePoolMaxIdleSeconds,
+                          @DefaultValue("60") int storePoolKeepAliveSeconds,
+                          @DefaultValue("false") boolean idleEnabled,
+                          @DefaultValue("1500") int idleRefreshSeconds,
+                          @DefaultValue("30") int idleReconnectDelaySeconds,
+                          @DefaultValue("10") int syncConcurrency,
+                          @DefaultValue("0") int syncMaxMailBoxesPerHost,
+                          @DefaultValue("0") int syncMaxSkippedRuns,
+                          @DefaultValue("1") int syncNodeCount,
+                          @DefaultValue("0") int syncNodeIndex,
+                          @DefaultValue("true") boolean storeAttachments,
+                          @DefaultValue("4") int eventsParallelism,
+                          @DefaultValue("100") int eventsQueueCapacity,
+                          @DefaultValue("1") int eventsHandlerAttempts,
+                          @DefaultValue("1000") int eventsRetryDelayMillis,
+                          @DefaultValue("1000") int credentialsCacheSize,
+                          @DefaultValue("3600") int credentialsCacheTtlSeconds) {
         this.trustAllCertificates = trustAllCertificates;
         this.updateBatchSize = updateBatchSize;
         this.clearCustomFlags = clearCustomFlags;
@@ -54,6 +171,24 @@ public class ImapProperties {
         this.eventsBatchSize = eventsBatchSize;
         this.imapSyncCron = imapSyncCron;
         this.useDefaultQuartzConfiguration = useDefaultQuartzConfiguration;
+        this.storePoolSize = storePoolSize;
+        this.storePoolMaxIdleSeconds = storePoolMaxIdleSeconds;
+        this.storePoolKeepAliveSeconds = storePoolKeepAliveSeconds;
+        this.idleEnabled = idleEnabled;
+        this.idleRefreshSeconds = idleRefreshSeconds;
+        this.idleReconnectDelaySeconds = idleReconnectDelaySeconds;
+        this.syncConcurrency = syncConcurrency;
+        this.syncMaxMailBoxesPerHost = syncMaxMailBoxesPerHost;
+        this.syncMaxSkippedRuns = syncMaxSkippedRuns;
+        this.syncNodeCount = syncNodeCount;
+        this.syncNodeIndex = syncNodeIndex;
+        this.storeAttachments = storeAttachments;
+        this.eventsParallelism = eventsParallelism;
+        this.eventsQueueCapacity = eventsQueueCapacity;
+        this.eventsHandlerAttempts = eventsHandlerAttempts;
+        this.eventsRetryDelayMillis = eventsRetryDelayMillis;
+        this.credentialsCacheSize = credentialsCacheSize;
+        this.credentialsCacheTtlSeconds = credentialsCacheTtlSeconds;
     }
 
     public boolean isTrustAllCertificates() {
@@ -93,4 +228,130 @@ public class ImapProperties {
     public String getImapSyncCron() {
         return imapSyncCron;
     }
+
+    /**
+     * @see #storePoolSize
+     */
+    public int getStorePoolSize() {
+        return storePoolSize;
+    }
+
+    /**
+     * @see #storePoolMaxIdleSeconds
+     */
+    public int getStorePoolMaxIdleSeconds() {
+        return storePoolMaxIdleSeconds;
+    }
+
+    /**
+     * @see #storePoolKeepAliveSeconds
+     */
+    public int getStorePoolKeepAliveSeconds() {
+        return storePoolKeepAliveSeconds;
+    }
+
+    /**
+     * @see #idleEnabled
+     */
+    public boolean isIdleEnabled() {
+        return idleEnabled;
+    }
+
+    /**
+     * @see #idleRefreshSeconds
+     */
+    public int getIdleRefreshSeconds() {
+        return idleRefreshSeconds;
+    }
+
+    /**
+     * @see #idleReconnectDelaySeconds
+     */
+    public int getIdleReconnectDelaySeconds() {
+        return idleReconnectDelaySeconds;
+    }
+
+    /**
+     * @see #syncConcurrency
+     */
+    public int getSyncConcurrency() {
+        return syncConcurrency;
+    }
+
+    /**
+     * @see #syncMaxMailBoxesPerHost
+     */
+    public int getSyncMaxMailBoxesPerHost() {
+        return syncMaxMailBoxesPerHost;
+    }
+
+    /**
+     * @see #syncMaxSkippedRuns
+     */
+    public int getSyncMaxSkippedRuns() {
+        return syncMaxSkippedRuns;
+    }
+
+    /**
+     * @see #syncNodeCount
+     */
+    public int getSyncNodeCount() {
+        return syncNodeCount;
+    }
+
+    /**
+     * @see #syncNodeIndex
+     */
+    public int getSyncNodeIndex() {
+        return syncNodeIndex;
+    }
+
+    /**
+     * @see #storeAttachments
+     */
+    public boolean isStoreAttachments() {
+        return storeAttachments;
+    }
+
+    /**
+     * @see #eventsParallelism
+     */
+    public int getEventsParallelism() {
+        return eventsParallelism;
+    }
+
+    /**
+     * @see #eventsQueueCapacity
+     */
+    public int getEventsQueueCapacity() {
+        return eventsQueueCapacity;
+    }
+
+    /**
+     * @see #eventsHandlerAttempts
+     */
+    public int getEventsHandlerAttempts() {
+        return eventsHandlerAttempts;
+    }
+
+    /**
+     * @see #eventsRetryDelayMillis
+     */
+    public int getEventsRetryDelayMillis() {
+        return eventsRetryDelayMillis;
+    }
+
+    /**
+     * @see #credentialsCacheSize
+     */
+    public int getCredentialsCacheSize() {
+        return credentialsCacheSize;
+    }
+
+    /**
+     * @see #credentialsCacheTtlSeconds
+     */
+    public int getCredentialsCacheTtlSeconds() {
+        return credentialsCacheTtlSeconds;
+    }
 }
@@ -16,6 +16,9 @@
 
 package io.jmix.imap;
 
+import io.jmix.imap.entity.ImapMailBox;
+
+import java.util.Collection;
 
 public interface ImapScheduler {
     /**
@@ -23,4 +26,12 @@ public interface ImapScheduler {
      *
      */
     void syncImap();
+
+    /**
+     * Schedules synchronization of the given folders of the IMAP message box and returns without waiting for it
+     *
+     * @param mailBox     message box
+     * @param folderNames names of the folders to synchronize
+     */
+    void syncFolders(ImapMailBox mailBox, Collection<String> folderNames);
 }
@@ -48,6 +48,8 @@ public class DefaultEncryptor implements Encryptor {
 
     protected byte[] iv;
 
+    protected final ThreadLocal<Cipher> ciphers = new ThreadLocal<>();
+
     @SuppressWarnings({"SpringJavaInjectionPointsAutowiringInspection", "CdiInjectionPointsInspection"})
     @Autowired
     public DefaultEncryptor(ImapEncryptionProperties encryptionProperties) {
@@ -109,8 +111,16 @@ public class DefaultEncryptor implements Encryptor {
         }
     }
 
+    /**
+     * Returns the cipher of the current thread initialized for the mode. Looking up a cipher implementation
+     * is much more expensive than initializing it.
+     */
     protected Cipher getCipher(int mode) throws GeneralSecurityException {
-        Cipher cipher = Cipher.getInstance(ALGORITHM);
+        Cipher cipher = ciphers.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(ALGORITHM);
+            ciphers.set(cipher);
+        }
         if (iv != null) {
             cipher.init(mode, secretKey, getAlgorithmParameterSpec());
         } else {
@@ -19,11 +19,13 @@ package io.jmix.imap.data;
 import io.jmix.core.DataManager;
 import io.jmix.core.FetchPlan;
 import io.jmix.core.FetchPlanRepository;
+import io.jmix.core.FileRef;
 import io.jmix.core.SaveContext;
 import io.jmix.imap.entity.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
@@ -97,6 +99,21 @@ public class ImapDataProvider {
                 .orElse(null);
     }
 
+    public List<ImapMessage> findMessagesByUids(ImapFolder mailFolder, Collection<Long> messageUids) {
+        List<Long> allUids = new ArrayList<>(messageUids);
+        List<ImapMessage> result = new ArrayList<>(allUids.size());
+        for (int i = 0; i < allUids.size(); i += 1000) {
+            List<Long> uids = allUids.subList(i, Math.min(i + 1000, allUids.size()));
+            result.addAll(dataManager.load(ImapMessage.class)
+                    .query("select m from imap_Message m where m.msgUid in :msgUids and m.folder.id = :mailFolderId")
+                    .parameter("mailFolderId", mailFolder.getId())
+                    .parameter("msgUids", uids)
+                    .fetchPlan("imap-msg-full")
+                    .list());
+        }
+        return result;
+    }
+
     public ImapMessage findMessageByImapMessageId(ImapMessage imapMessage) {
         return dataManager.load(ImapMessage.class)
                 .query("select m from imap_Message m where m.messageId = :imapMessageId and " +
@@ -116,6 +133,33 @@ public class ImapDataProvider {
                 .list();
     }
 
+    public ImapMessageAttachment findAttachment(UUID attachmentId) {
+        return dataManager.load(ImapMessageAttachment.class)
+                .id(attachmentId)
+                .fetchPlan("imap-msg-attachment-full")
+                .optional()
+                .orElse(null);
+    }
+
+    /**
+     * Saves the reference to the stored copy of the attachment content unless the attachment already has one.
+     * Concurrent saves of the same attachment fail with an optimistic lock exception, except the first one.
+     *
+     * @return true if the reference is saved, false if the attachment is not found or already has a stored copy
+     */
+    public boolean saveAttachmentFile(UUID attachmentId, FileRef file) {
+        ImapMessageAttachment attachment = dataManager.load(ImapMessageAttachment.class)
+                .id(attachmentId)
+                .optional()
+                .orElse(null);
+        if (attachment == null || attachment.getFile() != null) {
+            return false;
+        }
+        attachment.setFile(file);
+        dataManager.save(attachment);
+        return true;
+    }
+
     public void saveMessage(ImapMessage message) {
         dataManager.save(message);
     }
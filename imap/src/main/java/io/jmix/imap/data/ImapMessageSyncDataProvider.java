@@ -197,6 +197,23 @@ public class ImapMessageSyncDataProvider {
         });
     }
 
+    /**
+     * Saves the UIDVALIDITY and HIGHESTMODSEQ values of the folder which the next synchronization
+     * requests changes since.
+     */
+    public void updateFolderSyncState(ImapFolder imapFolder, long uidValidity, long highestModSeq) {
+        transaction.executeWithoutResult(transactionStatus -> {
+            entityManager.createQuery("update imap_Folder f set f.uidValidity = :uidValidity, " +
+                            "f.highestModSeq = :highestModSeq where f.id = :folderId")
+                    .setParameter("uidValidity", uidValidity)
+                    .setParameter("highestModSeq", highestModSeq)
+                    .setParameter("folderId", imapFolder.getId())
+                    .executeUpdate();
+        });
+        imapFolder.setUidValidity(uidValidity);
+        imapFolder.setHighestModSeq(highestModSeq);
+    }
+
     public void removeOldSyncs(ImapFolder imapFolder, Date minUpdateDate) {
         transaction.executeWithoutResult(transactionStatus -> {
             entityManager.createQuery("delete from imap_MessageSync ms where ms.folder.id = :folderId and ms.updateTs < :minUpdateDate")
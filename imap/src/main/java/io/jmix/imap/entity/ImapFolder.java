@@ -102,6 +102,12 @@ public class ImapFolder {
     @JoinColumn(name = "PARENT_FOLDER_ID")
     protected ImapFolder parent;
 
+    @Column(name = "UID_VALIDITY")
+    protected Long uidValidity;
+
+    @Column(name = "HIGHEST_MOD_SEQ")
+    protected Long highestModSeq;
+
     @Transient
     @JmixProperty
     protected Boolean unregistered = false;
@@ -241,6 +247,22 @@ public class ImapFolder {
         this.parent = parent;
     }
 
+    public Long getUidValidity() {
+        return uidValidity;
+    }
+
+    public void setUidValidity(Long uidValidity) {
+        this.uidValidity = uidValidity;
+    }
+
+    public Long getHighestModSeq() {
+        return highestModSeq;
+    }
+
+    public void setHighestModSeq(Long highestModSeq) {
+        this.highestModSeq = highestModSeq;
+    }
+
     public Boolean getUnregistered() {
         return unregistered;
     }
@@ -21,6 +21,7 @@ import io.jmix.core.DeletePolicy;
 import io.jmix.core.annotation.DeletedBy;
 import io.jmix.core.annotation.DeletedDate;
 import io.jmix.core.entity.annotation.JmixGeneratedValue;
+import io.jmix.core.entity.annotation.Listeners;
 import io.jmix.core.entity.annotation.OnDelete;
 import io.jmix.core.entity.annotation.OnDeleteInverse;
 import io.jmix.core.metamodel.annotation.Composition;
@@ -37,6 +38,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.UUID;
 
+@Listeners({"imap_FolderEventListener"})
 @Table(name = "IMAP_FOLDER_EVENT")
 @Entity(name = "imap_FolderEvent")
 @JmixEntity
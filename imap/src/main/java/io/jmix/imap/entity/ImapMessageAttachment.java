@@ -16,9 +16,13 @@
 
 package io.jmix.imap.entity;
 
+import io.jmix.core.DeletePolicy;
+import io.jmix.core.FileRef;
 import io.jmix.core.annotation.DeletedBy;
 import io.jmix.core.annotation.DeletedDate;
 import io.jmix.core.entity.annotation.JmixGeneratedValue;
+import io.jmix.core.entity.annotation.Listeners;
+import io.jmix.core.entity.annotation.OnDeleteInverse;
 import io.jmix.core.metamodel.annotation.DependsOnProperties;
 import io.jmix.core.metamodel.annotation.InstanceName;
 import io.jmix.core.metamodel.annotation.JmixEntity;
@@ -32,6 +36,7 @@ import jakarta.validation.constraints.NotNull;
 import java.util.Date;
 import java.util.UUID;
 
+@Listeners({"imap_MessageAttachmentListener"})
 @Table(name = "IMAP_MESSAGE_ATTACHMENT")
 @Entity(name = "imap_MessageAttachment")
 @JmixEntity
@@ -69,6 +74,7 @@ public class ImapMessageAttachment {
     @Column(name = "DELETED_BY", length = 50)
     protected String deletedBy;
 
+    @OnDeleteInverse(DeletePolicy.CASCADE)
     @NotNull
     @ManyToOne(fetch = FetchType.LAZY, optional = false)
     @JoinColumn(name = "IMAP_MESSAGE_ID")
@@ -91,6 +97,9 @@ public class ImapMessageAttachment {
     @Column(name = "FILE_SIZE", nullable = false)
     protected Long fileSize;
 
+    @Column(name = "FILE_", length = 1024)
+    protected FileRef file;
+
     public UUID getId() {
         return id;
     }
@@ -195,6 +204,17 @@ public class ImapMessageAttachment {
         return fileSize;
     }
 
+    public void setFile(FileRef file) {
+        this.file = file;
+    }
+
+    /**
+     * @return copy of the attachment content in a file storage, saved on the first download
+     */
+    public FileRef getFile() {
+        return file;
+    }
+
     @InstanceName
     @DependsOnProperties({"orderNumber", "name"})
     public String getInstanceName() {
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.jmix.imap.entity.listeners;
+
+import io.jmix.data.listener.AfterInsertEntityListener;
+import io.jmix.data.listener.AfterUpdateEntityListener;
+import io.jmix.data.listener.BeforeDeleteEntityListener;
+import io.jmix.imap.entity.ImapFolderEvent;
+import io.jmix.imap.sync.events.ImapEvents;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Clears handlers of folder events cached by {@link ImapEvents} when a {@link ImapFolderEvent} changes.
+ */
+@Component("imap_FolderEventListener")
+public class ImapFolderEventListener implements AfterInsertEntityListener<ImapFolderEvent>,
+        AfterUpdateEntityListener<ImapFolderEvent>,
+        BeforeDeleteEntityListener<ImapFolderEvent> {
+
+    @Autowired
+    protected ImapEvents imapEvents;
+
+    @Override
+    public void onAfterInsert(ImapFolderEvent entity) {
+        invalidateHandlersAfterCommit();
+    }
+
+    @Override
+    public void onAfterUpdate(ImapFolderEvent entity) {
+        invalidateHandlersAfterCommit();
+    }
+
+    @Override
+    public void onBeforeDelete(ImapFolderEvent entity) {
+        invalidateHandlersAfterCommit();
+    }
+
+    protected void invalidateHandlersAfterCommit() {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            public void afterCommit() {
+                imapEvents.invalidateHandlers();
+            }
+        });
+    }
+}
@@ -20,6 +20,7 @@ import io.jmix.data.AttributeChangesProvider;
 import io.jmix.data.listener.*;
 import io.jmix.imap.crypto.Encryptor;
 import io.jmix.imap.entity.ImapMailBox;
+import io.jmix.imap.impl.ImapCredentialCache;
 import io.jmix.imap.sync.ImapMailboxSyncActivationEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,6 +48,9 @@ public class ImapMailboxListener implements BeforeInsertEntityListener<ImapMailB
     @Autowired
     protected ApplicationEventPublisher applicationEventPublisher;
 
+    @Autowired
+    protected ImapCredentialCache imapCredentialCache;
+
     @Override
     public void onBeforeInsert(ImapMailBox entity) {
         setEncryptedPassword(entity);
@@ -57,6 +61,7 @@ public class ImapMailboxListener implements BeforeInsertEntityListener<ImapMailB
         if (attributeChangesProvider.isChanged(entity.getAuthentication(), "password")) {
             setEncryptedPassword(entity);
         }
+        imapCredentialCache.invalidate(entity.getId());
         applicationEventPublisher.publishEvent(createDeactivationEvent(entity));
     }
 
@@ -68,6 +73,7 @@ public class ImapMailboxListener implements BeforeInsertEntityListener<ImapMailB
 
     @Override
     public void onBeforeDelete(ImapMailBox entity) {
+        imapCredentialCache.invalidate(entity.getId());
         applicationEventPublisher.publishEvent(createDeactivationEvent(entity));
     }
 
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.jmix.imap.entity.listeners;
+
+import io.jmix.core.FileRef;
+import io.jmix.core.FileStorageLocator;
+import io.jmix.data.listener.BeforeDeleteEntityListener;
+import io.jmix.imap.entity.ImapMessageAttachment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Removes the stored copy of the attachment content from the file storage when the attachment is deleted,
+ * including deletion together with its {@link io.jmix.imap.entity.ImapMessage}.
+ */
+@Component("imap_MessageAttachmentListener")
+public class ImapMessageAttachmentListener implements BeforeDeleteEntityListener<ImapMessageAttachment> {
+
+    private final static Logger log = LoggerFactory.getLogger(ImapMessageAttachmentListener.class);
+
+    @Autowired
+    protected FileStorageLocator fileStorageLocator;
+
+    @Override
+    public void onBeforeDelete(ImapMessageAttachment entity) {
+        FileRef file = entity.getFile();
+        if (file == null) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            public void afterCommit() {
+                removeFile(file);
+            }
+        });
+    }
+
+    protected void removeFile(FileRef file) {
+        try {
+            fileStorageLocator.getByName(file.getStorageName()).removeFile(file);
+            log.debug("Stored attachment file {} is removed", file);
+        } catch (RuntimeException e) {
+            log.warn("Can't remove stored attachment file {}", file, e);
+        }
+    }
+}
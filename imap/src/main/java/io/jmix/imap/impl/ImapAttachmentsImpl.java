@@ -18,9 +18,14 @@
 package io.jmix.imap.impl;
 
 
+import io.jmix.core.FileRef;
+import io.jmix.core.FileStorage;
+import io.jmix.core.FileStorageException;
+import io.jmix.core.FileStorageLocator;
 import io.jmix.core.Metadata;
 import io.jmix.core.TimeSource;
 import io.jmix.imap.ImapAttachments;
+import io.jmix.imap.ImapProperties;
 import io.jmix.imap.data.ImapDataProvider;
 import io.jmix.imap.entity.ImapMailBox;
 import io.jmix.imap.entity.ImapMessage;
@@ -34,14 +39,18 @@ import org.eclipse.angus.mail.imap.IMAPStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 
 import jakarta.mail.*;
 import jakarta.mail.internet.MimeUtility;
-import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -63,6 +72,10 @@ public class ImapAttachmentsImpl implements ImapAttachments {
     protected TimeSource timeSource;
     @Autowired
     protected Metadata metadata;
+    @Autowired
+    protected ImapProperties imapProperties;
+    @Autowired
+    protected FileStorageLocator fileStorageLocator;
 
     @Override
     public Collection<ImapMessageAttachment> fetchAttachments(ImapMessage message) {
@@ -83,8 +96,9 @@ public class ImapAttachmentsImpl implements ImapAttachments {
 
         try {
             IMAPStore store = imapHelper.getStore(mailBox);
+            IMAPFolder imapFolder = null;
             try {
-                IMAPFolder imapFolder = (IMAPFolder) store.getFolder(folderName);
+                imapFolder = (IMAPFolder) store.getFolder(folderName);
                 imapFolder.open(Folder.READ_ONLY);
                 IMAPMessage imapMsg = (IMAPMessage) imapFolder.getMessageByUID(msg.getMsgUid());
                 Collection<ImapMessageAttachment> attachments = makeAttachments(imapMsg);
@@ -93,7 +107,8 @@ public class ImapAttachmentsImpl implements ImapAttachments {
                 return attachments;
 
             } finally {
-                store.close();
+                imapHelper.closeFolder(imapFolder);
+                imapHelper.releaseStore(store);
             }
         } catch (MessagingException e) {
             throw new ImapException(e);
@@ -169,42 +184,250 @@ public class ImapAttachmentsImpl implements ImapAttachments {
         return attachment;
     }
 
+    /**
+     * Returns the stored copy of the attachment if there is one. Otherwise streams the attachment part from the
+     * IMAP server, fetching it in chunks, and stores a copy of the content once it is read to the end.
+     */
     @Override
     public InputStream openStream(ImapMessageAttachment attachment) {
         log.info("Open stream for attachment {}", attachment);
-        return new ByteArrayInputStream(loadFile(attachment));
+
+        FileStorage fileStorage = getFileStorage();
+        if (fileStorage != null) {
+            FileRef file = getStoredFile(attachment);
+            if (file != null) {
+                try {
+                    return fileStorage.openStream(file);
+                } catch (FileStorageException e) {
+                    log.warn("Stored copy {} of attachment {} is not available, loading it from IMAP server",
+                            file, attachment, e);
+                }
+            }
+        }
+        return openImapStream(attachment, fileStorage);
     }
 
     @Override
     public byte[] loadFile(ImapMessageAttachment attachment) {
         log.info("load attachment {}", attachment);
 
+        try (InputStream inputStream = openStream(attachment)) {
+            return IOUtils.toByteArray(inputStream);
+        } catch (IOException e) {
+            throw new RuntimeException("Can't read content of attachment/message", e);
+        }
+    }
+
+    @Nullable
+    protected FileStorage getFileStorage() {
+        if (!imapProperties.isStoreAttachments()) {
+            return null;
+        }
+        try {
+            return fileStorageLocator.getDefault();
+        } catch (RuntimeException e) {
+            log.debug("No file storage to keep attachments in", e);
+            return null;
+        }
+    }
+
+    @Nullable
+    protected FileRef getStoredFile(ImapMessageAttachment attachment) {
+        if (attachment.getFile() != null) {
+            return attachment.getFile();
+        }
+        ImapMessageAttachment persisted = imapDataProvider.findAttachment(attachment.getId());
+        return persisted != null ? persisted.getFile() : null;
+    }
+
+    protected InputStream openImapStream(ImapMessageAttachment attachment, @Nullable FileStorage fileStorage) {
         ImapMessage msg = attachment.getImapMessage();
         ImapMailBox mailBox = msg.getFolder().getMailBox();
         String folderName = msg.getFolder().getName();
 
         try {
-            IMAPStore store = imapHelper.getStore(mailBox);
+            // the caller may hold the stream for long, so it must not occupy a pooled connection
+            IMAPStore store = imapHelper.openStore(mailBox);
+            IMAPFolder imapFolder = null;
             try {
-                IMAPFolder imapFolder = (IMAPFolder) store.getFolder(folderName);
+                imapFolder = (IMAPFolder) store.getFolder(folderName);
                 imapFolder.open(Folder.READ_ONLY);
                 IMAPMessage imapMessage = (IMAPMessage) imapFolder.getMessageByUID(msg.getMsgUid());
                 imapMessage.setPeek(true);
+
+                // only the body structure is fetched here, the content of the part is fetched while it is read
+                Multipart multipart = (Multipart) imapMessage.getContent();
+                BodyPart imapAttachment = multipart.getBodyPart(attachment.getOrderNumber());
+
+                return new AttachmentInputStream(imapAttachment.getInputStream(),
+                        attachment, imapFolder, store, fileStorage);
+            } catch (IOException e) {
+                imapHelper.closeFolder(imapFolder);
+                imapHelper.releaseStore(store);
+                throw new RuntimeException("Can't read content of attachment/message", e);
+            } catch (MessagingException | RuntimeException e) {
+                imapHelper.closeFolder(imapFolder);
+                imapHelper.releaseStore(store);
+                throw e;
+            }
+        } catch (MessagingException e) {
+            throw new ImapException(e);
+        }
+    }
+
+    /**
+     * Content of an attachment part read from the IMAP server. Holds the folder and a dedicated store, which is
+     * not taken from {@link ImapStorePool}, until closed.
+     * The content is copied to a temporary file as it is read and saved to the file storage if it is read
+     * to the end.
+     */
+    protected class AttachmentInputStream extends FilterInputStream {
+
+        protected final ImapMessageAttachment attachment;
+        protected final IMAPFolder folder;
+        protected final IMAPStore store;
+        protected final FileStorage fileStorage;
+
+        protected Path copyFile;
+        protected OutputStream copy;
+        protected boolean eof;
+        protected boolean closed;
+
+        protected AttachmentInputStream(InputStream in, ImapMessageAttachment attachment, IMAPFolder folder,
+                                        IMAPStore store, @Nullable FileStorage fileStorage) {
+            super(in);
+            this.attachment = attachment;
+            this.folder = folder;
+            this.store = store;
+            this.fileStorage = fileStorage;
+            if (fileStorage != null) {
                 try {
-                    Multipart multipart = (Multipart) imapMessage.getContent();
+                    copyFile = Files.createTempFile("imap-attachment", ".tmp");
+                    copy = Files.newOutputStream(copyFile);
+                } catch (IOException e) {
+                    log.warn("Can't create temporary file for attachment {}", attachment, e);
+                    discardCopy();
+                }
+            }
+        }
 
-                    BodyPart imapAttachment = multipart.getBodyPart(attachment.getOrderNumber());
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b == -1) {
+                eof = true;
+            } else if (copy != null) {
+                try {
+                    copy.write(b);
+                } catch (IOException e) {
+                    log.warn("Can't copy content of attachment {}", attachment, e);
+                    discardCopy();
+                }
+            }
+            return b;
+        }
 
-                    return IOUtils.toByteArray(imapAttachment.getInputStream());
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = in.read(b, off, len);
+            if (count == -1) {
+                eof = true;
+            } else if (copy != null) {
+                try {
+                    copy.write(b, off, count);
                 } catch (IOException e) {
-                    throw new RuntimeException("Can't read content of attachment/message", e);
+                    log.warn("Can't copy content of attachment {}", attachment, e);
+                    discardCopy();
                 }
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skipped content is not copied
+            discardCopy();
+            return in.skip(n);
+        }
 
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                in.close();
             } finally {
-                store.close();
+                imapHelper.closeFolder(folder);
+                imapHelper.releaseStore(store);
+                if (copy != null) {
+                    storeCopy();
+                }
+            }
+        }
+
+        protected void storeCopy() {
+            try {
+                copy.close();
+                if (eof) {
+                    FileRef file;
+                    try (InputStream copyStream = Files.newInputStream(copyFile)) {
+                        file = fileStorage.saveStream(attachment.getName(), copyStream);
+                    }
+                    saveStoredFile(file);
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("Can't store content of attachment {}", attachment, e);
+            } finally {
+                discardCopy();
+            }
+        }
+
+        /**
+         * Saves the reference to the stored copy, or removes the copy if another download of the attachment
+         * has stored its own one.
+         */
+        protected void saveStoredFile(FileRef file) {
+            boolean saved = false;
+            try {
+                saved = imapDataProvider.saveAttachmentFile(attachment.getId(), file);
+            } finally {
+                if (saved) {
+                    log.debug("Attachment {} is stored as {}", attachment, file);
+                } else {
+                    log.debug("Attachment {} is already stored, removing {}", attachment, file);
+                    try {
+                        fileStorage.removeFile(file);
+                    } catch (RuntimeException e) {
+                        log.warn("Can't remove file {} of attachment {}", file, attachment, e);
+                    }
+                }
+            }
+        }
+
+        protected void discardCopy() {
+            if (copy != null) {
+                try {
+                    copy.close();
+                } catch (IOException e) {
+                    log.debug("Can't close temporary file of attachment {}", attachment, e);
+                }
+                copy = null;
+            }
+            if (copyFile != null) {
+                try {
+                    Files.deleteIfExists(copyFile);
+                } catch (IOException e) {
+                    log.debug("Can't delete temporary file {}", copyFile, e);
+                }
+                copyFile = null;
             }
-        } catch (MessagingException e) {
-            throw new ImapException(e);
         }
     }
 }
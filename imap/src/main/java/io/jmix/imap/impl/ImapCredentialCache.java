@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.jmix.imap.impl;
+
+import io.jmix.imap.ImapProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Keeps decrypted passwords of mailboxes in memory, so that they are not decrypted on every connection.
+ * <p>
+ * Passwords are stored per mailbox together with the encrypted password they were decrypted from, so a changed
+ * password is never served from the cache. Entries expire after {@link ImapProperties#getCredentialsCacheTtlSeconds()}
+ * seconds, the least recently used entries are evicted above {@link ImapProperties#getCredentialsCacheSize()}
+ * entries, and entries of a mailbox are removed when the mailbox is changed or removed. Discarded passwords
+ * are overwritten with zeros.
+ */
+@Component("imap_ImapCredentialCache")
+public class ImapCredentialCache {
+
+    @Autowired
+    protected ImapProperties imapProperties;
+
+    // access-ordered, guarded by this
+    protected final LinkedHashMap<UUID, Credential> credentials = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Returns the decrypted password of the mailbox, decrypting it if it is not cached.
+     *
+     * @param mailBoxId         mailbox id
+     * @param encryptedPassword persisted encrypted password of the mailbox
+     * @param decryptor         decrypts the password
+     */
+    public String getPlainPassword(UUID mailBoxId, String encryptedPassword, Supplier<String> decryptor) {
+        if (!isEnabled() || encryptedPassword == null) {
+            return decryptor.get();
+        }
+        synchronized (this) {
+            Credential credential = getValid(mailBoxId, encryptedPassword);
+            if (credential != null) {
+                return new String(credential.plainPassword);
+            }
+        }
+
+        String plainPassword = decryptor.get();
+        if (plainPassword != null) {
+            long expiresAt = System.currentTimeMillis()
+                    + TimeUnit.SECONDS.toMillis(imapProperties.getCredentialsCacheTtlSeconds());
+            synchronized (this) {
+                discard(credentials.put(mailBoxId,
+                        new Credential(encryptedPassword, plainPassword.toCharArray(), expiresAt)));
+                evict();
+            }
+        }
+        return plainPassword;
+    }
+
+    /**
+     * @return true if the password was decrypted from the given encrypted password and is still cached,
+     * i.e. the given password is the persisted one
+     */
+    public synchronized boolean isPersistedPassword(UUID mailBoxId, String encryptedPassword) {
+        return isEnabled() && encryptedPassword != null && getValid(mailBoxId, encryptedPassword) != null;
+    }
+
+    public synchronized void invalidate(UUID mailBoxId) {
+        discard(credentials.remove(mailBoxId));
+    }
+
+    public synchronized void invalidateAll() {
+        credentials.values().forEach(this::discard);
+        credentials.clear();
+    }
+
+    protected boolean isEnabled() {
+        return imapProperties.getCredentialsCacheSize() > 0;
+    }
+
+    /**
+     * Must be called holding the lock.
+     */
+    protected Credential getValid(UUID mailBoxId, String encryptedPassword) {
+        Credential credential = credentials.get(mailBoxId);
+        if (credential == null) {
+            return null;
+        }
+        if (credential.expiresAt < System.currentTimeMillis()
+                || !credential.encryptedPassword.equals(encryptedPassword)) {
+            discard(credentials.remove(mailBoxId));
+            return null;
+        }
+        return credential;
+    }
+
+    /**
+     * Removes expired and the least recently used entries. Must be called holding the lock.
+     */
+    protected void evict() {
+        long now = System.currentTimeMillis();
+        int maxSize = imapProperties.getCredentialsCacheSize();
+        Iterator<Map.Entry<UUID, Credential>> iterator = credentials.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Credential credential = iterator.next().getValue();
+            if (credentials.size() > maxSize || credential.expiresAt < now) {
+                iterator.remove();
+                discard(credential);
+            }
+        }
+    }
+
+    protected void discard(Credential credential) {
+        if (credential != null) {
+            Arrays.fill(credential.plainPassword, '\0');
+        }
+    }
+
+    protected static class Credential {
+        protected final String encryptedPassword;
+        protected final char[] plainPassword;
+        protected final long expiresAt;
+
+        protected Credential(String encryptedPassword, char[] plainPassword, long expiresAt) {
+            this.encryptedPassword = encryptedPassword;
+            this.plainPassword = plainPassword;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.jmix.imap.impl;
+
+import io.jmix.core.security.SystemAuthenticator;
+import io.jmix.imap.ImapProperties;
+import io.jmix.imap.entity.ImapFolder;
+import io.jmix.imap.sync.events.ImapEvents;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Handles events of synchronized folders in background threads.
+ * <p>
+ * Events of different folders are handled in parallel by {@link ImapProperties#getEventsParallelism()} threads.
+ * Events of a folder are generated in batches of {@link ImapProperties#getEventsBatchSize()} and handled one by one.
+ * A folder requested while its events are being handled is handled once more afterwards. If
+ * {@link ImapProperties#getEventsQueueCapacity()} folders are already waiting, {@link #submit(ImapFolder)} blocks,
+ * which slows down synchronization instead of dropping events.
+ * <p>
+ * Event generation updates the synchronization state of messages, so the caller must not synchronize the folder
+ * again until the future returned by {@link #submit(ImapFolder)} is completed.
+ */
+@Component("imap_ImapEventPipeline")
+public class ImapEventPipeline {
+
+    private final static Logger log = LoggerFactory.getLogger(ImapEventPipeline.class);
+
+    @Autowired
+    protected ImapEvents imapEvents;
+
+    @Autowired
+    protected ImapProperties imapProperties;
+
+    @Autowired
+    protected SystemAuthenticator authenticator;
+
+    @Autowired
+    protected MeterRegistry meterRegistry;
+
+    protected ExecutorService executor;
+
+    protected Semaphore capacity;
+
+    protected final Map<UUID, FolderQueue> folderQueues = new ConcurrentHashMap<>();
+
+    protected final AtomicInteger queuedFolders = new AtomicInteger();
+
+    @PostConstruct
+    protected void init() {
+        if (!isEnabled()) {
+            return;
+        }
+        executor = Executors.newFixedThreadPool(imapProperties.getEventsParallelism(), new EventsThreadFactory());
+        capacity = new Semaphore(Math.max(imapProperties.getEventsQueueCapacity(), 1), true);
+        meterRegistry.gauge("jmix.imap.Events.queued", queuedFolders);
+    }
+
+    public boolean isEnabled() {
+        return imapProperties.getEventsParallelism() > 0;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Requests handling of new, missed and changed messages of the folder. Handles them in the calling thread
+     * if the pipeline is disabled.
+     *
+     * @return future completed when no events of the folder are being handled or waiting to be handled
+     */
+    public CompletableFuture<Void> submit(ImapFolder folder) {
+        if (!isEnabled()) {
+            handleFolderEvents(folder);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        FolderQueue queue = folderQueues.computeIfAbsent(folder.getId(), id -> new FolderQueue());
+        CompletableFuture<Void> idle = new CompletableFuture<>();
+        synchronized (queue) {
+            queue.folder = folder;
+            queue.idleWaiters.add(idle);
+            boolean active = queue.pending || queue.running;
+            queue.pending = true;
+            if (active) {
+                // handled by the queued or the running task
+                return idle;
+            }
+            queue.running = true;
+        }
+
+        try {
+            capacity.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reset(queue);
+            log.warn("Interrupted while waiting to handle events of {}", folder);
+            return idle;
+        }
+        queuedFolders.incrementAndGet();
+        try {
+            executor.execute(() -> process(queue));
+        } catch (RejectedExecutionException e) {
+            queuedFolders.decrementAndGet();
+            capacity.release();
+            reset(queue);
+            log.warn("Events of {} are not handled, the pipeline is shut down", folder);
+        }
+        return idle;
+    }
+
+    protected void process(FolderQueue queue) {
+        queuedFolders.decrementAndGet();
+        List<CompletableFuture<Void>> idleWaiters = null;
+        try {
+            while (true) {
+                ImapFolder folder;
+                synchronized (queue) {
+                    if (!queue.pending) {
+                        queue.running = false;
+                        idleWaiters = queue.takeIdleWaiters();
+                        return;
+                    }
+                    queue.pending = false;
+                    folder = queue.folder;
+                }
+                try {
+                    handleFolderEvents(folder);
+                } catch (RuntimeException e) {
+                    log.error(String.format("Error on handling events of folder %s[%s]",
+                            folder.getName(), folder.getId()), e);
+                }
+            }
+        } finally {
+            capacity.release();
+            if (idleWaiters == null) {
+                // an error escaped the loop, let the folder be submitted again
+                reset(queue);
+            } else {
+                idleWaiters.forEach(idle -> idle.complete(null));
+            }
+        }
+    }
+
+    protected void handleFolderEvents(ImapFolder folder) {
+        authenticator.begin();
+        try {
+            imapEvents.handleNewMessages(folder);
+            imapEvents.handleMissedMessages(folder);
+            imapEvents.handleChangedMessages(folder);
+        } finally {
+            authenticator.end();
+        }
+    }
+
+    protected void reset(FolderQueue queue) {
+        List<CompletableFuture<Void>> idleWaiters;
+        synchronized (queue) {
+            queue.pending = false;
+            queue.running = false;
+            idleWaiters = queue.takeIdleWaiters();
+        }
+        idleWaiters.forEach(idle -> idle.complete(null));
+    }
+
+    protected static class FolderQueue {
+        protected ImapFolder folder;
+        protected boolean pending;
+        protected boolean running;
+        protected List<CompletableFuture<Void>> idleWaiters = new ArrayList<>();
+
+        protected List<CompletableFuture<Void>> takeIdleWaiters() {
+            List<CompletableFuture<Void>> result = idleWaiters;
+            idleWaiters = new ArrayList<>();
+            return result;
+        }
+    }
+
+    protected static class EventsThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(@Nonnull Runnable r) {
+            Thread thread = new Thread(r, "ImapEvents-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
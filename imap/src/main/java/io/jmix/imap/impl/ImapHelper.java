@@ -16,6 +16,7 @@
 
 package io.jmix.imap.impl;
 
+import io.jmix.imap.ImapProperties;
 import io.jmix.imap.data.ImapDataProvider;
 import io.jmix.imap.entity.ImapMailBox;
 import io.jmix.imap.protocol.ThreadExtension;
@@ -24,6 +25,7 @@ import org.eclipse.angus.mail.imap.IMAPStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 
 import jakarta.mail.*;
@@ -48,14 +50,83 @@ public class ImapHelper {
     @Autowired
     protected ImapDataProvider imapDataProvider;
 
+    @Autowired
+    protected ImapStorePool imapStorePool;
+
+    @Autowired
+    protected ImapProperties imapProperties;
+
+    @Autowired
+    protected ImapCredentialCache imapCredentialCache;
+
+    /**
+     * Returns a connected store of the mailbox, taken from the pool if the mailbox is saved.
+     * The store must be returned by {@link #releaseStore(IMAPStore)}.
+     */
     public IMAPStore getStore(ImapMailBox box) throws MessagingException {
         log.debug("Accessing imap store for {}", box);
 
-        String persistedPassword = imapDataProvider.getPersistedPassword(box);
-        return Objects.equals(box.getAuthentication().getPassword(), persistedPassword)
+        if (!isPersistedPassword(box)) {
+            return buildStore(box, box.getAuthentication().getPassword());
+        }
+        if (imapStorePool.isEnabled()) {
+            IMAPStore store = imapStorePool.borrow(box, box.getAuthentication().getPassword());
+            supportThreading.put(box.getId(), store.hasCapability(ThreadExtension.CAPABILITY_NAME));
+            return store;
+        }
+        return buildStore(box);
+    }
+
+    /**
+     * Returns a new connected store of the mailbox bypassing the pool, e.g. to check connection parameters
+     * which are not saved yet. The store must be returned by {@link #releaseStore(IMAPStore)}.
+     */
+    public IMAPStore openStore(ImapMailBox box) throws MessagingException {
+        return isPersistedPassword(box)
                 ? buildStore(box) : buildStore(box, box.getAuthentication().getPassword());
     }
 
+    /**
+     * Returns whether the password of the mailbox is the saved encrypted one, as opposed to a plain password
+     * entered but not saved yet. The database is checked only if the password is not in {@link ImapCredentialCache}.
+     */
+    protected boolean isPersistedPassword(ImapMailBox box) {
+        String password = box.getAuthentication().getPassword();
+        return imapCredentialCache.isPersistedPassword(box.getId(), password)
+                || Objects.equals(password, imapDataProvider.getPersistedPassword(box));
+    }
+
+    /**
+     * Returns the store obtained by {@link #getStore(ImapMailBox)} to the pool or closes it.
+     * Folders opened in the store must be closed before.
+     */
+    public void releaseStore(IMAPStore store) {
+        imapStorePool.release(store);
+    }
+
+    /**
+     * Closes the folder if it is open, without expunging deleted messages.
+     */
+    public void closeFolder(@Nullable Folder folder) {
+        if (folder != null && folder.isOpen()) {
+            try {
+                folder.close(false);
+            } catch (MessagingException | IllegalStateException e) {
+                log.warn("can't close folder " + folder.getFullName(), e);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the mailbox is synchronized by this application node. Mailboxes are distributed between
+     * {@link ImapProperties#getSyncNodeCount()} nodes by their ids.
+     */
+    public boolean isSyncedByThisNode(ImapMailBox mailBox) {
+        int nodeCount = imapProperties.getSyncNodeCount();
+        return nodeCount <= 1
+                || Math.floorMod(mailBox.getId().hashCode(), nodeCount) == imapProperties.getSyncNodeIndex();
+    }
+
     public Flags jmixFlags(ImapMailBox mailBox) {
         return new Flags(mailBox.getJmixFlag());
     }
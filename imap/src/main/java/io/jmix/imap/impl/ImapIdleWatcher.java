@@ -0,0 +1,300 @@
+/*
+ * Copyright 2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.jmix.imap.impl;
+
+import io.jmix.core.security.SystemAuthenticator;
+import io.jmix.imap.ImapProperties;
+import io.jmix.imap.ImapScheduler;
+import io.jmix.imap.data.ImapDataProvider;
+import io.jmix.imap.entity.ImapFolder;
+import io.jmix.imap.entity.ImapMailBox;
+import io.jmix.imap.sync.ImapMailboxSyncActivationEvent;
+import org.eclipse.angus.mail.imap.IMAPFolder;
+import org.eclipse.angus.mail.imap.IMAPStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.Folder;
+import jakarta.mail.MessagingException;
+import jakarta.mail.event.MessageCountEvent;
+import jakarta.mail.event.MessageCountListener;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Watches processable folders of mailboxes with IMAP IDLE (RFC 2177) and synchronizes a folder
+ * as soon as the server reports new, expunged or changed messages in it.
+ * <p>
+ * Enabled by {@link ImapProperties#isIdleEnabled()}. Each watched folder holds its own connection. Mailboxes
+ * of servers without the IDLE capability, and mailboxes with a folder which is not being watched at the moment
+ * because of a connection failure, are synchronized by {@link ImapScheduler#syncImap()} as usual.
+ */
+@Component("imap_ImapIdleWatcher")
+public class ImapIdleWatcher {
+
+    private final static Logger log = LoggerFactory.getLogger(ImapIdleWatcher.class);
+
+    protected static final String IDLE_CAPABILITY = "IDLE";
+
+    @Autowired
+    protected ImapProperties imapProperties;
+
+    @Autowired
+    protected ImapDataProvider imapDataProvider;
+
+    @Autowired
+    protected ImapHelper imapHelper;
+
+    @Autowired
+    protected ImapScheduler imapScheduler;
+
+    @Autowired
+    protected SystemAuthenticator authenticator;
+
+    protected final Map<UUID, MailBoxWatch> watches = new ConcurrentHashMap<>();
+
+    protected final ExecutorService executor = Executors.newCachedThreadPool(new IdleThreadFactory("ImapIdle-"));
+
+    protected final ScheduledExecutorService refreshExecutor =
+            Executors.newSingleThreadScheduledExecutor(new IdleThreadFactory("ImapIdleRefresh-"));
+
+    @EventListener
+    protected void applicationStarted(ApplicationStartedEvent event) {
+        if (!imapProperties.isIdleEnabled()) {
+            return;
+        }
+        int refreshSeconds = Math.max(imapProperties.getIdleRefreshSeconds(), 1);
+        refreshExecutor.scheduleWithFixedDelay(this::refreshIdle, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+
+        authenticator.begin();
+        try {
+            imapDataProvider.findMailBoxes().forEach(this::watch);
+        } finally {
+            authenticator.end();
+        }
+    }
+
+    @EventListener
+    protected void onMailBoxChanged(ImapMailboxSyncActivationEvent event) {
+        if (!imapProperties.isIdleEnabled()) {
+            return;
+        }
+        UUID mailBoxId = event.getMailBox().getId();
+        unwatch(mailBoxId);
+        if (event.getType() == ImapMailboxSyncActivationEvent.Type.ACTIVATE) {
+            authenticator.begin();
+            try {
+                ImapMailBox mailBox = imapDataProvider.findMailBox(mailBoxId);
+                if (mailBox != null) {
+                    watch(mailBox);
+                }
+            } finally {
+                authenticator.end();
+            }
+        }
+    }
+
+    /**
+     * @return true if all processable folders of the mailbox are watched with IDLE at the moment
+     */
+    public boolean isWatched(UUID mailBoxId) {
+        MailBoxWatch watch = watches.get(mailBoxId);
+        return watch != null && watch.idlingFolders.size() == watch.folderNames.size();
+    }
+
+    /**
+     * Starts watching processable folders of the mailbox if its server supports IDLE.
+     */
+    public void watch(ImapMailBox mailBox) {
+        if (!imapHelper.isSyncedByThisNode(mailBox)) {
+            return;
+        }
+        List<String> folderNames = mailBox.getProcessableFolders().stream()
+                .map(ImapFolder::getName)
+                .collect(Collectors.toList());
+        if (folderNames.isEmpty()) {
+            return;
+        }
+
+        IMAPStore store;
+        try {
+            store = imapHelper.openStore(mailBox);
+            if (!store.hasCapability(IDLE_CAPABILITY)) {
+                log.info("Server of {} does not support IDLE, the mailbox will be polled", mailBox);
+                imapHelper.releaseStore(store);
+                return;
+            }
+        } catch (MessagingException | RuntimeException e) {
+            log.warn("Can't start IDLE for " + mailBox + ", the mailbox will be polled", e);
+            return;
+        }
+
+        MailBoxWatch watch = new MailBoxWatch(mailBox, store, folderNames);
+        MailBoxWatch previous = watches.put(mailBox.getId(), watch);
+        if (previous != null) {
+            stop(previous);
+        }
+        for (String folderName : folderNames) {
+            executor.submit(() -> idle(watch, folderName));
+        }
+        log.debug("Watching folders {} of {} with IDLE", folderNames, mailBox);
+    }
+
+    public void unwatch(UUID mailBoxId) {
+        MailBoxWatch watch = watches.remove(mailBoxId);
+        if (watch != null) {
+            stop(watch);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+        watches.keySet().forEach(this::unwatch);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Keeps the folder in the IDLE state and requests its synchronization on every change until the watch is stopped.
+     * The folder is reopened after a connection failure.
+     */
+    protected void idle(MailBoxWatch watch, String folderName) {
+        while (!watch.stopped) {
+            IMAPFolder folder = null;
+            try {
+                folder = (IMAPFolder) watch.store.getFolder(folderName);
+                folder.open(Folder.READ_ONLY);
+                folder.addMessageCountListener(new MessageCountListener() {
+                    @Override
+                    public void messagesAdded(MessageCountEvent e) {
+                        requestSync(watch, folderName);
+                    }
+
+                    @Override
+                    public void messagesRemoved(MessageCountEvent e) {
+                        requestSync(watch, folderName);
+                    }
+                });
+                folder.addMessageChangedListener(e -> requestSync(watch, folderName));
+                watch.idlingFolders.put(folderName, folder);
+
+                // changes made while the folder was not watched
+                requestSync(watch, folderName);
+                while (!watch.stopped && folder.isOpen()) {
+                    folder.idle(true);
+                }
+            } catch (MessagingException | RuntimeException e) {
+                if (watch.stopped) {
+                    break;
+                }
+                log.warn("IDLE of folder '{}' of {} failed, reconnecting in {} s",
+                        folderName, watch.mailBox, imapProperties.getIdleReconnectDelaySeconds(), e);
+            } finally {
+                watch.idlingFolders.remove(folderName);
+                imapHelper.closeFolder(folder);
+            }
+
+            if (!watch.stopped) {
+                try {
+                    TimeUnit.SECONDS.sleep(imapProperties.getIdleReconnectDelaySeconds());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Requests synchronization of the folder from {@link ImapScheduler}, which coalesces repeated requests and
+     * synchronizes folders of the same mailbox one at a time within the limits of the sync schedule.
+     */
+    protected void requestSync(MailBoxWatch watch, String folderName) {
+        if (watch.stopped) {
+            return;
+        }
+        imapScheduler.syncFolders(watch.mailBox, Collections.singleton(folderName));
+    }
+
+    /**
+     * Reissues IDLE commands before the server drops idle connections. Any command sent to a folder
+     * terminates its IDLE, after which the watching thread starts a new one.
+     */
+    protected void refreshIdle() {
+        for (MailBoxWatch watch : watches.values()) {
+            for (IMAPFolder folder : watch.idlingFolders.values()) {
+                try {
+                    folder.getMessageCount();
+                } catch (MessagingException | RuntimeException e) {
+                    log.debug("Failed to refresh IDLE of folder '{}' of {}", folder.getFullName(), watch.mailBox, e);
+                }
+            }
+        }
+    }
+
+    protected void stop(MailBoxWatch watch) {
+        watch.stopped = true;
+        // closing the store terminates IDLE of its folders
+        imapHelper.releaseStore(watch.store);
+    }
+
+    protected static class MailBoxWatch {
+        protected final ImapMailBox mailBox;
+        protected final IMAPStore store;
+        protected final List<String> folderNames;
+        protected final Map<String, IMAPFolder> idlingFolders = new ConcurrentHashMap<>();
+        protected volatile boolean stopped;
+
+        protected MailBoxWatch(ImapMailBox mailBox, IMAPStore store, List<String> folderNames) {
+            this.mailBox = mailBox;
+            this.store = store;
+            this.folderNames = folderNames;
+        }
+    }
+
+    protected static class IdleThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+        private final String prefix;
+
+        protected IdleThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(@Nonnull Runnable r) {
+            Thread thread = new Thread(r, prefix + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -60,13 +60,13 @@ public class ImapManagerImpl implements ImapManager {
 
         ImapConnectResult result = new ImapConnectResult(box);
         try {
-            IMAPStore store = imapHelper.getStore(box);
+            IMAPStore store = imapHelper.openStore(box);
             try {
                 result.setAllFolders(imapOperations.fetchFolders(store));
                 result.setCustomFlagSupported(imapOperations.supportsCustomFlag(store));
                 result.setSuccess(true);
             } finally {
-                store.close();
+                imapHelper.releaseStore(store);
             }
         } catch (MessagingException e) {
             result.setSuccess(false);
@@ -86,7 +86,7 @@ public class ImapManagerImpl implements ImapManager {
                 return imapOperations.fetchFolders(store);
 
             } finally {
-                store.close();
+                imapHelper.releaseStore(store);
             }
         } catch (MessagingException e) {
             throw new ImapException(e);
@@ -183,10 +183,12 @@ public class ImapManagerImpl implements ImapManager {
 
         try {
             IMAPStore store = imapHelper.getStore(mailBox);
+            IMAPFolder oldImapFolder = null;
+            IMAPFolder newImapFolder = null;
             try {
-                IMAPFolder oldImapFolder = (IMAPFolder) store.getFolder(oldFolderName);
+                oldImapFolder = (IMAPFolder) store.getFolder(oldFolderName);
                 oldImapFolder.open(Folder.READ_WRITE);
-                IMAPFolder newImapFolder = (IMAPFolder) store.getFolder(newFolderName);
+                newImapFolder = (IMAPFolder) store.getFolder(newFolderName);
                 newImapFolder.open(Folder.READ_WRITE);
 
                 Message m = oldImapFolder.getMessageByUID(msg.getMsgUid());
@@ -195,7 +197,9 @@ public class ImapManagerImpl implements ImapManager {
                 oldImapFolder.expunge();
 
             } finally {
-                store.close();
+                imapHelper.closeFolder(oldImapFolder);
+                imapHelper.closeFolder(newImapFolder);
+                imapHelper.releaseStore(store);
             }
         } catch (MessagingException e) {
             throw new ImapException(e);
@@ -220,13 +224,15 @@ public class ImapManagerImpl implements ImapManager {
 
         try {
             IMAPStore store = imapHelper.getStore(mailBox);
+            IMAPFolder imapFolder = null;
             try {
-                IMAPFolder imapFolder = (IMAPFolder) store.getFolder(folderName);
+                imapFolder = (IMAPFolder) store.getFolder(folderName);
                 imapFolder.open(Folder.READ_WRITE);
                 return consumer.apply((IMAPMessage) imapFolder.getMessageByUID(uid));
 
             } finally {
-                store.close();
+                imapHelper.closeFolder(imapFolder);
+                imapHelper.releaseStore(store);
             }
         } catch (MessagingException e) {
             throw new ImapException(e);
@@ -17,27 +17,67 @@
 package io.jmix.imap.impl;
 
 import io.jmix.core.security.SystemAuthenticator;
+import io.jmix.imap.ImapProperties;
 import io.jmix.imap.ImapScheduler;
 import io.jmix.imap.data.ImapDataProvider;
 import io.jmix.imap.entity.ImapMailBox;
 import io.jmix.imap.sync.ImapFlaglessSynchronizer;
+import io.jmix.imap.sync.ImapMailboxSyncActivationEvent;
 import io.jmix.imap.sync.ImapSynchronizer;
-import io.jmix.imap.sync.events.ImapEvents;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 
 import jakarta.annotation.Nonnull;
-import java.util.HashMap;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
+/**
+ * Synchronizes mailboxes with a bounded number of threads.
+ * <p>
+ * Every run of the sync schedule queues the mailboxes which are assigned to this node
+ * (see {@link ImapHelper#isSyncedByThisNode(ImapMailBox)}), are not watched with IDLE and are not being
+ * synchronized at the moment, the least recently synchronized first, and returns without waiting for them.
+ * Mailboxes watched with IDLE are not synchronized by the schedule, but the events of their folders are still
+ * handled on every run, because a folder gets at most {@link ImapProperties#getEventsBatchSize()} events
+ * of each kind at a time.
+ * At most {@link ImapProperties#getSyncConcurrency()} mailboxes are synchronized at once, and at most
+ * {@link ImapProperties#getSyncMaxMailBoxesPerHost()} of them on the same IMAP server. Mailboxes without recent
+ * changes may skip runs, see {@link ImapProperties#getSyncMaxSkippedRuns()}.
+ * <p>
+ * Synchronization of separate folders requested by {@link #syncFolders(ImapMailBox, Collection)} obeys the same
+ * limits and never runs concurrently with another synchronization of the mailbox. Folders requested while
+ * the mailbox is being synchronized are queued and synchronized together after it.
+ * <p>
+ * A mailbox is considered being synchronized until the events of its folders are handled by
+ * {@link ImapEventPipeline}, because event generation updates the synchronization state of the messages.
+ */
 @Component("imap_ImapScheduler")
 public class ImapSchedulerImpl implements ImapScheduler {
 
@@ -46,9 +86,6 @@ public class ImapSchedulerImpl implements ImapScheduler {
     @Autowired
     protected ImapDataProvider imapDataProvider;
 
-    @Autowired
-    protected ImapEvents imapEvents;
-
     @Autowired
     protected ImapFlaglessSynchronizer imapFlaglessSynchronizer;
 
@@ -58,69 +95,324 @@ public class ImapSchedulerImpl implements ImapScheduler {
     @Autowired
     protected SystemAuthenticator authenticator;
 
-    protected final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
-        private final AtomicInteger threadNumber = new AtomicInteger(1);
+    @Autowired
+    protected ObjectProvider<ImapIdleWatcher> imapIdleWatcher;
 
-        @Override
-        public Thread newThread(@Nonnull Runnable r) {
-            Thread thread = new Thread(
-                    r, "ImapMailBoxSync-" + threadNumber.getAndIncrement()
-            );
-            thread.setDaemon(true);
-            return thread;
-        }
-    });
+    @Autowired
+    protected ImapHelper imapHelper;
+
+    @Autowired
+    protected ImapEventPipeline imapEventPipeline;
+
+    @Autowired
+    protected ImapProperties imapProperties;
+
+    @Autowired
+    protected MeterRegistry meterRegistry;
+
+    protected ExecutorService executor;
+
+    protected final Map<UUID, MailBoxSyncState> syncStates = new ConcurrentHashMap<>();
+
+    protected final Map<String, HostSlots> hostSlots = new ConcurrentHashMap<>();
+
+    protected final AtomicInteger queuedMailBoxes = new AtomicInteger();
+
+    protected final AtomicInteger runningMailBoxes = new AtomicInteger();
+
+    @PostConstruct
+    protected void init() {
+        executor = Executors.newFixedThreadPool(Math.max(imapProperties.getSyncConcurrency(), 1), new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(@Nonnull Runnable r) {
+                Thread thread = new Thread(
+                        r, "ImapMailBoxSync-" + threadNumber.getAndIncrement()
+                );
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        meterRegistry.gauge("jmix.imap.Scheduler.queued", queuedMailBoxes);
+        meterRegistry.gauge("jmix.imap.Scheduler.running", runningMailBoxes);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
 
     @Override
     public void syncImap() {
-        List<ImapMailBox> mailBoxes = imapDataProvider.findMailBoxes();
+        List<ImapMailBox> mailBoxes = imapDataProvider.findMailBoxes().stream()
+                .filter(imapHelper::isSyncedByThisNode)
+                .collect(Collectors.toList());
         log.trace("IMAP synchronization: found {} mailboxes", mailBoxes.size());
+        removeObsoleteStates(mailBoxes);
+
+        ImapIdleWatcher idleWatcher = imapIdleWatcher.getIfAvailable();
+        if (idleWatcher != null) {
+            // changes of these mailboxes are pushed by the server, only the remaining events are handled
+            List<ImapMailBox> watchedMailBoxes = mailBoxes.stream()
+                    .filter(mailBox -> idleWatcher.isWatched(mailBox.getId()))
+                    .collect(Collectors.toList());
+            mailBoxes.removeAll(watchedMailBoxes);
+            watchedMailBoxes.forEach(this::dispatchEventsHandling);
+        }
+
+        long now = System.currentTimeMillis();
+        Map<UUID, Long> lastSyncTimes = mailBoxes.stream()
+                .collect(Collectors.toMap(ImapMailBox::getId, mailBox -> getSyncState(mailBox).lastSyncTime));
+        mailBoxes.sort(Comparator.comparingLong(mailBox -> lastSyncTimes.get(mailBox.getId())));
+        for (ImapMailBox mailBox : mailBoxes) {
+            MailBoxSyncState state = getSyncState(mailBox);
+            if (state.running.get()) {
+                log.debug("Sync of {}[{}] mailbox is still in progress, skip it", mailBox.getName(), mailBox.getId());
+                continue;
+            }
+            if (state.runsToSkip > 0) {
+                state.runsToSkip--;
+                log.trace("Skip sync of {}[{}] mailbox without recent changes", mailBox.getName(), mailBox.getId());
+                continue;
+            }
+            if (!state.running.compareAndSet(false, true)) {
+                continue;
+            }
+            queuedMailBoxes.incrementAndGet();
+            dispatch(getHostSlots(mailBox), () -> runSync(mailBox, state, now));
+        }
+    }
+
+    @Override
+    public void syncFolders(ImapMailBox mailBox, Collection<String> folderNames) {
+        log.trace("IMAP synchronization of folders {} of mailbox with id={} requested", folderNames, mailBox.getId());
+        MailBoxSyncState state = getSyncState(mailBox);
+        state.pendingFolders.addAll(folderNames);
+        dispatchPendingFolders(mailBox, state);
+    }
+
+    @EventListener
+    protected void onMailBoxChanged(ImapMailboxSyncActivationEvent event) {
+        removeSyncState(event.getMailBox().getId());
+    }
+
+    protected void runSync(ImapMailBox mailBox, MailBoxSyncState state, long queuedTime) {
+        queuedMailBoxes.decrementAndGet();
+        runningMailBoxes.incrementAndGet();
+        meterRegistry.timer("jmix.imap.Scheduler.wait")
+                .record(System.currentTimeMillis() - queuedTime, TimeUnit.MILLISECONDS);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        // changes of these folders are synchronized with the whole mailbox
+        state.pendingFolders.clear();
+        authenticator.begin();
+        // a failed synchronization is retried without skipping runs
+        boolean changed = true;
+        CompletableFuture<Void> events = CompletableFuture.completedFuture(null);
+        try {
+            changed = getImapSynchronizer(mailBox).synchronize(mailBox);
+            events = handleFolderMessages(mailBox);
+            state.lastSyncTime = System.currentTimeMillis();
+        } catch (Exception e) {
+            log.error(String.format("Error on %s[%s] mailbox sync",
+                    mailBox.getName(), mailBox.getId()), e);
+        } finally {
+            authenticator.end();
+            sample.stop(meterRegistry.timer("jmix.imap.Scheduler.sync"));
+            updateSkippedRuns(state, changed);
+            runningMailBoxes.decrementAndGet();
+            releaseWhenHandled(mailBox, state, events);
+        }
+    }
 
-        Map<ImapMailBox, Future> tasks = new HashMap<>(mailBoxes.size());
-        mailBoxes.forEach(mailBox -> {
-            tasks.put(mailBox, executor.submit(() -> {
-                authenticator.begin();
+    /**
+     * Queues synchronization of the folders requested for the mailbox unless the mailbox is being synchronized
+     * at the moment, in which case the folders are dispatched when the running synchronization completes.
+     */
+    protected void dispatchPendingFolders(ImapMailBox mailBox, MailBoxSyncState state) {
+        if (state.pendingFolders.isEmpty() || !state.running.compareAndSet(false, true)) {
+            return;
+        }
+        queuedMailBoxes.incrementAndGet();
+        long now = System.currentTimeMillis();
+        dispatch(getHostSlots(mailBox), () -> runFolderSync(mailBox, state, now));
+    }
+
+    protected void runFolderSync(ImapMailBox mailBox, MailBoxSyncState state, long queuedTime) {
+        queuedMailBoxes.decrementAndGet();
+        runningMailBoxes.incrementAndGet();
+        meterRegistry.timer("jmix.imap.Scheduler.wait")
+                .record(System.currentTimeMillis() - queuedTime, TimeUnit.MILLISECONDS);
+        // folders requested from now on need another synchronization
+        List<String> folderNames = new ArrayList<>(state.pendingFolders);
+        state.pendingFolders.removeAll(folderNames);
+        log.trace("IMAP synchronization of folders {} of mailbox with id={}", folderNames, mailBox.getId());
+        authenticator.begin();
+        CompletableFuture<Void> events = CompletableFuture.completedFuture(null);
+        try {
+            getImapSynchronizer(mailBox).synchronize(mailBox, folderNames);
+            events = handleFolderMessages(mailBox, folderNames);
+        } catch (Exception e) {
+            log.error(String.format("Error on sync of folders %s of %s[%s] mailbox",
+                    folderNames, mailBox.getName(), mailBox.getId()), e);
+        } finally {
+            authenticator.end();
+            runningMailBoxes.decrementAndGet();
+            releaseWhenHandled(mailBox, state, events);
+        }
+    }
+
+    /**
+     * Handles the events of the mailbox folders without synchronizing them, unless the mailbox is being
+     * synchronized at the moment. Does not use the limits of the IMAP server as no connection is opened.
+     */
+    protected void dispatchEventsHandling(ImapMailBox mailBox) {
+        MailBoxSyncState state = getSyncState(mailBox);
+        if (!state.running.compareAndSet(false, true)) {
+            return;
+        }
+        executor.execute(() -> runEventsHandling(mailBox, state));
+    }
+
+    protected void runEventsHandling(ImapMailBox mailBox, MailBoxSyncState state) {
+        authenticator.begin();
+        CompletableFuture<Void> events = CompletableFuture.completedFuture(null);
+        try {
+            events = handleFolderMessages(mailBox);
+        } catch (Exception e) {
+            log.error(String.format("Error on handling events of %s[%s] mailbox",
+                    mailBox.getName(), mailBox.getId()), e);
+        } finally {
+            authenticator.end();
+            releaseWhenHandled(mailBox, state, events);
+        }
+    }
+
+    /**
+     * Allows the next synchronization of the mailbox when the events of its folders are handled.
+     */
+    protected void releaseWhenHandled(ImapMailBox mailBox, MailBoxSyncState state, CompletableFuture<Void> events) {
+        events.whenComplete((result, e) -> {
+            state.running.set(false);
+            dispatchPendingFolders(mailBox, state);
+        });
+    }
+
+    /**
+     * Doubles the number of runs to skip after a synchronization without changes, up to
+     * {@link ImapProperties#getSyncMaxSkippedRuns()}, and resets it after a change. Changes are reported
+     * by the synchronizer: new, changed or missed messages found in the mailbox.
+     */
+    protected void updateSkippedRuns(MailBoxSyncState state, boolean changed) {
+        int maxSkippedRuns = imapProperties.getSyncMaxSkippedRuns();
+        if (changed || maxSkippedRuns <= 0) {
+            state.skippedRunsStep = 0;
+        } else {
+            state.skippedRunsStep = Math.min(Math.max(state.skippedRunsStep * 2, 1), maxSkippedRuns);
+        }
+        state.runsToSkip = state.skippedRunsStep;
+    }
+
+    /**
+     * Runs the task when the limit of mailboxes synchronized on its IMAP server allows.
+     */
+    protected void dispatch(HostSlots slots, Runnable task) {
+        slots.pending.add(task);
+        drain(slots);
+    }
+
+    protected void drain(HostSlots slots) {
+        while (!slots.pending.isEmpty() && slots.permits.tryAcquire()) {
+            Runnable task = slots.pending.poll();
+            if (task == null) {
+                slots.permits.release();
+                continue;
+            }
+            executor.execute(() -> {
                 try {
-                    syncMailBox(mailBox);
+                    task.run();
                 } finally {
-                    authenticator.end();
+                    slots.permits.release();
+                    drain(slots);
                 }
-            }));
-        });
+            });
+        }
+    }
 
-        tasks.keySet().forEach(mailBox -> {
-            try {
-                tasks.get(mailBox).get();
-            } catch (Exception e) {
-                log.error(String.format("Error on %s[%s] mailbox sync",
-                        mailBox.getName(), mailBox.getId()), e);
-            }
+    protected HostSlots getHostSlots(ImapMailBox mailBox) {
+        int maxPerHost = imapProperties.getSyncMaxMailBoxesPerHost();
+        return hostSlots.computeIfAbsent(String.valueOf(mailBox.getHost()),
+                host -> new HostSlots(maxPerHost > 0 ? maxPerHost : Integer.MAX_VALUE));
+    }
+
+    protected MailBoxSyncState getSyncState(ImapMailBox mailBox) {
+        return syncStates.computeIfAbsent(mailBox.getId(), id -> {
+            MailBoxSyncState state = new MailBoxSyncState();
+            // time since the last successful synchronization
+            state.lagGauge = Gauge.builder("jmix.imap.Scheduler.lag", state,
+                            s -> s.lastSyncTime == 0 ? 0 : System.currentTimeMillis() - s.lastSyncTime)
+                    .tag("mailbox", id.toString())
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+            return state;
         });
+    }
 
+    protected void removeObsoleteStates(List<ImapMailBox> mailBoxes) {
+        Set<UUID> ids = mailBoxes.stream().map(ImapMailBox::getId).collect(Collectors.toSet());
+        syncStates.keySet().stream()
+                .filter(id -> !ids.contains(id))
+                .collect(Collectors.toList())
+                .forEach(this::removeSyncState);
     }
 
-    protected void syncMailBox(ImapMailBox mailBox) {
-        getImapSynchronizer(mailBox).synchronize(mailBox);
-        handleFolderMessages(mailBox);
+    protected void removeSyncState(UUID mailBoxId) {
+        MailBoxSyncState state = syncStates.remove(mailBoxId);
+        if (state != null && state.lagGauge != null) {
+            meterRegistry.remove(state.lagGauge);
+        }
     }
 
     protected ImapSynchronizer getImapSynchronizer(ImapMailBox mailBox) {
         return Boolean.TRUE.equals(mailBox.getFlagsSupported()) ? imapSynchronizer : imapFlaglessSynchronizer;
     }
 
-    protected void handleFolderMessages(ImapMailBox imapMailBox) {
+    protected CompletableFuture<Void> handleFolderMessages(ImapMailBox imapMailBox) {
+        return handleFolderMessages(imapMailBox, null);
+    }
+
+    /**
+     * @return future completed when the events of the folders are handled
+     */
+    protected CompletableFuture<Void> handleFolderMessages(ImapMailBox imapMailBox,
+                                                           @Nullable Collection<String> folderNames) {
         log.trace("Handle folder messages of mailbox with id={}", imapMailBox.getId());
         ImapMailBox mailBox = imapDataProvider.findMailBox(imapMailBox.getId());
         if (mailBox == null) {
             log.trace("Mailbox with id={} not found", imapMailBox.getId());
-            return;
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.allOf(mailBox.getProcessableFolders().stream()
+                .filter(folder -> folderNames == null || folderNames.contains(folder.getName()))
+                .map(imapEventPipeline::submit)
+                .toArray(CompletableFuture[]::new));
+    }
+
+    protected static class MailBoxSyncState {
+        protected final AtomicBoolean running = new AtomicBoolean();
+        protected final Set<String> pendingFolders = ConcurrentHashMap.newKeySet();
+        protected volatile long lastSyncTime;
+        protected volatile int skippedRunsStep;
+        protected volatile int runsToSkip;
+        protected volatile Gauge lagGauge;
+    }
+
+    protected static class HostSlots {
+        protected final Semaphore permits;
+        protected final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+
+        protected HostSlots(int size) {
+            this.permits = new Semaphore(size);
         }
-        mailBox.getProcessableFolders()
-                .forEach(folder -> {
-                            imapEvents.handleNewMessages(folder);
-                            imapEvents.handleMissedMessages(folder);
-                            imapEvents.handleChangedMessages(folder);
-                        }
-                );
     }
 }
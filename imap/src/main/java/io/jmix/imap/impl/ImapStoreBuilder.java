@@ -64,6 +64,8 @@ public class ImapStoreBuilder {
     protected ImapProperties config;
     @Autowired
     protected Encryptor encryptor;
+    @Autowired
+    protected ImapCredentialCache imapCredentialCache;
 
     IMAPStore build(ImapMailBox mailBox, String password, boolean decryptPassword) throws MessagingException {
         String protocol = mailBox.getSecureMode() == ImapSecureMode.TLS ? "imaps" : "imap";
@@ -107,7 +109,8 @@ public class ImapStoreBuilder {
     protected String decryptedPassword(ImapMailBox mailBox, String persistedPassword) {
         String password = mailBox.getAuthentication().getPassword();
         if (Objects.equals(password, persistedPassword)) {
-            password = encryptor.getPlainPassword(mailBox);
+            password = imapCredentialCache.getPlainPassword(mailBox.getId(), persistedPassword,
+                    () -> encryptor.getPlainPassword(mailBox));
         }
         return password;
     }
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.jmix.imap.impl;
+
+import io.jmix.imap.ImapProperties;
+import io.jmix.imap.entity.ImapMailBox;
+import io.jmix.imap.entity.ImapProxy;
+import io.jmix.imap.sync.ImapMailboxSyncActivationEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.eclipse.angus.mail.imap.IMAPStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.Nonnull;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of connected and authenticated {@link IMAPStore}s per mailbox.
+ * <p>
+ * Stores are reused between synchronization runs and attachment downloads so that every operation
+ * does not repeat the TCP connection, TLS handshake and login. Idle stores are kept alive with {@code NOOP}
+ * and closed after {@link ImapProperties#getStorePoolMaxIdleSeconds()} seconds of inactivity. Stores of a
+ * mailbox are closed when the mailbox is changed or removed.
+ */
+@Component("imap_ImapStorePool")
+public class ImapStorePool {
+
+    private final static Logger log = LoggerFactory.getLogger(ImapStorePool.class);
+
+    @Autowired
+    protected ImapStoreBuilder imapStoreBuilder;
+
+    @Autowired
+    protected ImapProperties imapProperties;
+
+    @Autowired
+    protected MeterRegistry meterRegistry;
+
+    protected final Map<UUID, MailBoxStores> storesByMailBox = new ConcurrentHashMap<>();
+
+    protected final Map<IMAPStore, MailBoxStores> borrowedStores = new ConcurrentHashMap<>();
+
+    protected ScheduledExecutorService keepAliveExecutor;
+
+    @PostConstruct
+    protected void init() {
+        if (!isEnabled()) {
+            return;
+        }
+        keepAliveExecutor = Executors.newSingleThreadScheduledExecutor(this::newKeepAliveThread);
+        int interval = Math.max(imapProperties.getStorePoolKeepAliveSeconds(), 1);
+        keepAliveExecutor.scheduleWithFixedDelay(this::keepAlive, interval, interval, TimeUnit.SECONDS);
+    }
+
+    public boolean isEnabled() {
+        return imapProperties.getStorePoolSize() > 0;
+    }
+
+    /**
+     * Takes a connected store of the mailbox, connecting a new one if there is no idle store.
+     * Waits if all stores of the mailbox are in use. The store must be returned by {@link #release(IMAPStore)}.
+     *
+     * @param mailBox  mailbox
+     * @param password encrypted password of the mailbox
+     */
+    public IMAPStore borrow(ImapMailBox mailBox, String password) throws MessagingException {
+        MailBoxStores stores = getStores(mailBox);
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            stores.permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted while waiting for IMAP connection", e);
+        }
+        sample.stop(meterRegistry.timer("jmix.imap.StorePool.borrow"));
+
+        try {
+            PooledStore pooledStore;
+            while ((pooledStore = stores.idleStores.pollFirst()) != null) {
+                // IMAPStore checks the connection with NOOP
+                if (pooledStore.store.isConnected()) {
+                    borrowedStores.put(pooledStore.store, stores);
+                    return pooledStore.store;
+                }
+                close(pooledStore.store);
+            }
+
+            IMAPStore store = imapStoreBuilder.build(mailBox, password, true);
+            meterRegistry.counter("jmix.imap.StorePool.connect").increment();
+            log.debug("Opened IMAP connection for {}", mailBox);
+            borrowedStores.put(store, stores);
+            return store;
+        } catch (MessagingException | RuntimeException e) {
+            stores.permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the store to the pool. Stores not obtained from the pool are closed.
+     */
+    public void release(IMAPStore store) {
+        MailBoxStores stores = borrowedStores.remove(store);
+        if (stores == null) {
+            close(store);
+            return;
+        }
+        try {
+            if (stores.evicted) {
+                close(store);
+            } else {
+                stores.idleStores.offerFirst(new PooledStore(store));
+            }
+        } finally {
+            stores.permits.release();
+        }
+    }
+
+    /**
+     * Closes idle stores of the mailbox. Stores which are in use are closed when released.
+     */
+    public void evict(UUID mailBoxId) {
+        MailBoxStores stores = storesByMailBox.remove(mailBoxId);
+        if (stores != null) {
+            closeAll(stores);
+        }
+    }
+
+    @EventListener
+    protected void onMailBoxChanged(ImapMailboxSyncActivationEvent event) {
+        evict(event.getMailBox().getId());
+    }
+
+    @PreDestroy
+    public void close() {
+        if (keepAliveExecutor != null) {
+            keepAliveExecutor.shutdownNow();
+        }
+        storesByMailBox.keySet().forEach(this::evict);
+    }
+
+    protected MailBoxStores getStores(ImapMailBox mailBox) {
+        String configuration = getConfigurationKey(mailBox);
+        MailBoxStores[] replaced = new MailBoxStores[1];
+        MailBoxStores result = storesByMailBox.compute(mailBox.getId(), (id, stores) -> {
+            if (stores != null && stores.configuration.equals(configuration)) {
+                return stores;
+            }
+            if (stores != null) {
+                stores.evicted = true;
+                replaced[0] = stores;
+            }
+            return new MailBoxStores(configuration, imapProperties.getStorePoolSize());
+        });
+        // closing logs out from the server, which must not block other keys of the map
+        if (replaced[0] != null) {
+            log.debug("Configuration of {} changed, closing its IMAP connections", mailBox);
+            closeAll(replaced[0]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the string which changes when connection parameters of the mailbox change.
+     */
+    protected String getConfigurationKey(ImapMailBox mailBox) {
+        ImapProxy proxy = mailBox.getProxy();
+        return String.join("|",
+                mailBox.getHost(),
+                String.valueOf(mailBox.getPort()),
+                String.valueOf(mailBox.getSecureMode()),
+                String.valueOf(mailBox.getRootCertificate()),
+                String.valueOf(mailBox.getAuthentication().getUsername()),
+                String.valueOf(mailBox.getAuthentication().getPassword()),
+                proxy == null ? "" : proxy.getHost() + ":" + proxy.getPort() + ":" + proxy.getWebProxy());
+    }
+
+    protected void keepAlive() {
+        long deadline = System.currentTimeMillis()
+                - TimeUnit.SECONDS.toMillis(imapProperties.getStorePoolMaxIdleSeconds());
+        for (MailBoxStores stores : storesByMailBox.values()) {
+            // stores are checked in place, so that borrow does not find the deque empty and connect a new one
+            for (PooledStore pooledStore : stores.idleStores) {
+                // IMAPStore checks the connection with NOOP and serializes it with commands of a borrower
+                if (pooledStore.lastUsed < deadline || !pooledStore.store.isConnected()) {
+                    if (stores.idleStores.removeFirstOccurrence(pooledStore)) {
+                        close(pooledStore.store);
+                    }
+                }
+            }
+        }
+    }
+
+    protected void closeAll(MailBoxStores stores) {
+        stores.evicted = true;
+        PooledStore pooledStore;
+        while ((pooledStore = stores.idleStores.pollFirst()) != null) {
+            close(pooledStore.store);
+        }
+    }
+
+    protected void close(IMAPStore store) {
+        try {
+            store.close();
+        } catch (MessagingException e) {
+            log.debug("Failed to close IMAP store", e);
+        }
+    }
+
+    protected Thread newKeepAliveThread(@Nonnull Runnable r) {
+        Thread thread = new Thread(r, "ImapStorePoolKeepAlive");
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    protected static class MailBoxStores {
+        protected final String configuration;
+        protected final Semaphore permits;
+        protected final BlockingDeque<PooledStore> idleStores = new LinkedBlockingDeque<>();
+        protected volatile boolean evicted;
+
+        protected MailBoxStores(String configuration, int size) {
+            this.configuration = configuration;
+            this.permits = new Semaphore(size, true);
+        }
+    }
+
+    protected static class PooledStore {
+        protected final IMAPStore store;
+        protected final long lastUsed = System.currentTimeMillis();
+
+        protected PooledStore(IMAPStore store) {
+            this.store = store;
+        }
+    }
+}
@@ -22,6 +22,7 @@ import io.jmix.imap.entity.ImapFolder;
 import io.jmix.imap.entity.ImapMailBox;
 import io.jmix.imap.entity.ImapMessage;
 import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.collections4.ListUtils;
 import org.eclipse.angus.mail.imap.IMAPFolder;
 import org.eclipse.angus.mail.imap.IMAPMessage;
 import org.slf4j.Logger;
@@ -35,10 +36,10 @@ import java.util.List;
 public class ImapFlaglessSynchronizer extends ImapSynchronizer {
     private final static Logger log = LoggerFactory.getLogger(ImapSynchronizer.class);
 
-    protected void handleNewMessages(List<ImapMessage> checkAnswers,
-                                     List<ImapMessage> missedMessages,
-                                     ImapFolder jmixFolder,
-                                     IMAPFolder imapFolder) throws MessagingException {
+    protected boolean handleNewMessages(List<ImapMessage> checkAnswers,
+                                        List<ImapMessage> missedMessages,
+                                        ImapFolder jmixFolder,
+                                        IMAPFolder imapFolder) throws MessagingException {
         ImapMailBox mailBox = jmixFolder.getMailBox();
 
         Integer lastMessageNumber = imapDataProvider.findLastMessageNumber(jmixFolder);
@@ -48,14 +49,15 @@ public class ImapFlaglessSynchronizer extends ImapSynchronizer {
 
         List<IMAPMessage> imapMessages = imapOperations.search(imapFolder, lastMessageNumber, mailBox);
         if (CollectionUtils.isNotEmpty(imapMessages)) {
-            for (IMAPMessage imapMessage : imapMessages) {
-                log.debug("[{}]insert message with uid {} to db after changing flags on server",
-                        jmixFolder, imapFolder.getUID(imapMessage));
-                ImapMessage jmixMessage = createMessage(imapMessage, jmixFolder);
-                if (jmixMessage != null && jmixMessage.getReferenceId() != null) {
-                    checkAnswers.add(jmixMessage);
+            for (List<IMAPMessage> batch : ListUtils.partition(imapMessages, getNewMessagesBatchSize())) {
+                log.debug("[{}]insert {} messages to db", jmixFolder, batch.size());
+                for (ImapMessage jmixMessage : createMessages(batch, jmixFolder)) {
+                    if (jmixMessage.getReferenceId() != null) {
+                        checkAnswers.add(jmixMessage);
+                    }
                 }
             }
         }
+        return CollectionUtils.isNotEmpty(imapMessages);
     }
 }
@@ -28,15 +28,19 @@ import io.jmix.imap.flags.ImapFlag;
 import io.jmix.imap.impl.ImapHelper;
 import io.jmix.imap.impl.ImapOperations;
 import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.collections4.ListUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.DateUtils;
 import org.eclipse.angus.mail.imap.IMAPFolder;
 import org.eclipse.angus.mail.imap.IMAPMessage;
 import org.eclipse.angus.mail.imap.IMAPStore;
+import org.eclipse.angus.mail.imap.MessageVanishedEvent;
+import org.eclipse.angus.mail.imap.ResyncData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Primary;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionDefinition;
@@ -46,6 +50,8 @@ import jakarta.mail.Flags;
 import jakarta.mail.Folder;
 import jakarta.mail.Message;
 import jakarta.mail.MessagingException;
+import jakarta.mail.event.MailEvent;
+import jakarta.mail.event.MessageChangedEvent;
 import jakarta.mail.search.FlagTerm;
 import jakarta.mail.search.MessageIDTerm;
 import jakarta.persistence.EntityManager;
@@ -58,6 +64,9 @@ public class ImapSynchronizer {
 
     private final static Logger log = LoggerFactory.getLogger(ImapSynchronizer.class);
 
+    protected static final String CONDSTORE_CAPABILITY = "CONDSTORE";
+    protected static final String QRESYNC_CAPABILITY = "QRESYNC";
+
     @Autowired
     protected ImapHelper imapHelper;
 
@@ -93,7 +102,24 @@ public class ImapSynchronizer {
         transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
     }
 
-    public void synchronize(ImapMailBox imapMailBox) {
+    /**
+     * Synchronizes all processable folders of the mailbox.
+     *
+     * @return true if new, changed or missed messages have been found
+     */
+    public boolean synchronize(ImapMailBox imapMailBox) {
+        return synchronize(imapMailBox, null);
+    }
+
+    /**
+     * Synchronizes the given folders of the mailbox.
+     *
+     * @param imapMailBox mailbox
+     * @param folderNames names of the folders to synchronize, all processable folders if null
+     * @return true if new, changed or missed messages have been found
+     */
+    public boolean synchronize(ImapMailBox imapMailBox, @Nullable Collection<String> folderNames) {
+        boolean changed = false;
         authenticator.begin();
         try {
             log.trace("Start synchronization of mailbox (id={})", imapMailBox.getId());
@@ -101,7 +127,7 @@ public class ImapSynchronizer {
 
             if (mailBox == null) {
                 log.trace("Mailbox not found by id={}", imapMailBox.getId());
-                return;
+                return false;
             }
 
             IMAPStore store = imapHelper.getStore(mailBox);
@@ -110,6 +136,9 @@ public class ImapSynchronizer {
                 List<ImapMessage> missedMessages = new ArrayList<>();
 
                 for (ImapFolder jmixFolder : mailBox.getProcessableFolders()) {
+                    if (folderNames != null && !folderNames.contains(jmixFolder.getName())) {
+                        continue;
+                    }
                     IMAPFolder imapFolder = null;
                     try {
                         log.trace("Synchronize folder '{}' of mailbox '{}'", jmixFolder.getName(), mailBox);
@@ -117,13 +146,31 @@ public class ImapSynchronizer {
                         imapMessageSyncDataProvider.removeOldSyncs(jmixFolder, tenMinutesAgo);
 
                         imapFolder = (IMAPFolder) store.getFolder(jmixFolder.getName());
-                        imapFolder.open(Folder.READ_WRITE);
+                        List<MailEvent> resyncEvents = null;
+                        if (isResyncAvailable(store, jmixFolder)) {
+                            resyncEvents = imapFolder.open(Folder.READ_WRITE,
+                                    new ResyncData(jmixFolder.getUidValidity(), jmixFolder.getHighestModSeq()));
+                        } else {
+                            imapFolder.open(Folder.READ_WRITE);
+                        }
+                        // taken before own changes so that changes made by others meanwhile are not skipped
+                        long highestModSeq = getHighestModSeq(store, imapFolder);
 
                         //existing
-                        handleExistingMessages(checkAnswers, missedMessages, jmixFolder, imapFolder);
+                        if (resyncEvents != null && imapFolder.getUIDValidity() == jmixFolder.getUidValidity()) {
+                            changed |= handleResyncedMessages(checkAnswers, missedMessages, jmixFolder, imapFolder,
+                                    resyncEvents);
+                        } else {
+                            changed |= handleExistingMessages(checkAnswers, missedMessages, jmixFolder, imapFolder);
+                        }
 
                         //new
-                        handleNewMessages(checkAnswers, missedMessages, jmixFolder, imapFolder);
+                        changed |= handleNewMessages(checkAnswers, missedMessages, jmixFolder, imapFolder);
+
+                        if (highestModSeq > 0) {
+                            imapMessageSyncDataProvider.updateFolderSyncState(jmixFolder,
+                                    imapFolder.getUIDValidity(), highestModSeq);
+                        }
                     } catch (MessagingException e) {
                         log.warn("synchronization of folder " + jmixFolder.getName() + " of mailbox " + mailBox + " failed", e);
                     } finally {
@@ -136,10 +183,11 @@ public class ImapSynchronizer {
                 setAnswersFlag(mailBox, store, checkAnswers);
 
                 // missed
+                changed |= !missedMessages.isEmpty();
                 handleMissedMessages(mailBox, store, missedMessages);
 
             } finally {
-                store.close();
+                imapHelper.releaseStore(store);
             }
         } catch (MessagingException e) {
             throw new ImapException(String.format("synchronization of mailBox#%s failed", imapMailBox.getId()), e);
@@ -148,12 +196,16 @@ public class ImapSynchronizer {
         } finally {
             authenticator.end();
         }
+        return changed;
     }
 
-    protected void handleExistingMessages(List<ImapMessage> checkAnswers,
-                                        List<ImapMessage> missedMessages,
-                                        ImapFolder folder,
-                                        IMAPFolder imapFolder) throws MessagingException {
+    /**
+     * @return true if flags of some messages have changed
+     */
+    protected boolean handleExistingMessages(List<ImapMessage> checkAnswers,
+                                           List<ImapMessage> missedMessages,
+                                           ImapFolder folder,
+                                           IMAPFolder imapFolder) throws MessagingException {
 
         log.trace("Handle existing messages for folder '{}'", folder.getName());
         Date tenMinutesAgo = DateUtils.addMinutes(timeSource.currentTimestamp(), -10);
@@ -168,9 +220,11 @@ public class ImapSynchronizer {
                 folder, ImapSyncStatus.IN_SYNC, tenMinutesAgo, threeMinutesAgo);
         messagesForSync.addAll(oldInSync);
 
+        boolean changed = false;
         for (ImapMessage message : messagesForSync) {
             Message imapMessage = imapFolder.getMessageByUID(message.getMsgUid());
             if (imapMessage != null) {
+                changed |= !imapMessage.getFlags().equals(message.getImapFlags());
                 imapMessageSyncDataProvider.updateSyncStatus(message,
                         ImapSyncStatus.REMAIN, ImapSyncStatus.IN_SYNC,
                         imapMessage.getFlags(), null);
@@ -190,12 +244,94 @@ public class ImapSynchronizer {
         Collection<ImapMessage> missed = new ArrayList<>(imapMessageSyncDataProvider.findMessagesWithSyncStatus(folder, ImapSyncStatus.MISSED,
                 tenMinutesAgo, threeMinutesAgo));
         missedMessages.addAll(missed);
+        return changed;
+    }
+
+    /**
+     * Whether the changes of the folder since the previous synchronization can be requested
+     * with QRESYNC (RFC 7162) instead of checking the messages one by one.
+     */
+    protected boolean isResyncAvailable(IMAPStore store, ImapFolder folder) throws MessagingException {
+        return folder.getUidValidity() != null
+                && folder.getHighestModSeq() != null
+                && folder.getHighestModSeq() > 0
+                && store.hasCapability(QRESYNC_CAPABILITY);
+    }
+
+    protected long getHighestModSeq(IMAPStore store, IMAPFolder imapFolder) {
+        try {
+            return store.hasCapability(CONDSTORE_CAPABILITY) ? imapFolder.getHighestModSeq() : -1;
+        } catch (MessagingException e) {
+            log.debug("Can't get HIGHESTMODSEQ of folder '{}'", imapFolder.getFullName(), e);
+            return -1;
+        }
     }
 
-    protected void handleNewMessages(List<ImapMessage> checkAnswers,
-                                     List<ImapMessage> missedMessages,
-                                     ImapFolder jmixFolder,
-                                     IMAPFolder imapFolder) throws MessagingException {
+    /**
+     * Handles the flag changes and expunges reported by the server when the folder was opened with QRESYNC.
+     * The cost depends on the number of changed messages rather than on the folder size.
+     *
+     * @return true if the server has reported changed messages
+     */
+    protected boolean handleResyncedMessages(List<ImapMessage> checkAnswers,
+                                             List<ImapMessage> missedMessages,
+                                             ImapFolder folder,
+                                             IMAPFolder imapFolder,
+                                             List<MailEvent> resyncEvents) throws MessagingException {
+        log.trace("Handle messages changed since modseq {} for folder '{}'", folder.getHighestModSeq(), folder.getName());
+        Map<Long, Flags> changedFlags = new LinkedHashMap<>();
+        List<Long> vanishedUids = new ArrayList<>();
+        for (MailEvent event : resyncEvents) {
+            if (event instanceof MessageVanishedEvent) {
+                for (long uid : ((MessageVanishedEvent) event).getUIDs()) {
+                    vanishedUids.add(uid);
+                }
+            } else if (event instanceof MessageChangedEvent) {
+                Message message = ((MessageChangedEvent) event).getMessage();
+                changedFlags.put(imapFolder.getUID(message), message.getFlags());
+            }
+        }
+        log.trace("Found {} changed and {} vanished messages", changedFlags.size(), vanishedUids.size());
+
+        if (!changedFlags.isEmpty()) {
+            // new messages are reported as well, they are handled by handleNewMessages
+            List<ImapMessage> changed = imapDataProvider.findMessagesByUids(folder, changedFlags.keySet());
+            imapMessageSyncDataProvider.createSyncForMessages(changed, ImapSyncStatus.IN_SYNC);
+            for (ImapMessage message : changed) {
+                imapMessageSyncDataProvider.updateSyncStatus(message,
+                        ImapSyncStatus.REMAIN, ImapSyncStatus.IN_SYNC,
+                        changedFlags.get(message.getMsgUid()), null);
+                if (message.getReferenceId() != null) {
+                    checkAnswers.add(message);
+                }
+            }
+        }
+
+        if (!vanishedUids.isEmpty()) {
+            List<ImapMessage> vanished = imapDataProvider.findMessagesByUids(folder, vanishedUids);
+            imapMessageSyncDataProvider.createSyncForMessages(vanished, ImapSyncStatus.IN_SYNC);
+            for (ImapMessage message : vanished) {
+                missedMessages.add(message);
+                imapMessageSyncDataProvider.updateSyncStatus(message,
+                        ImapSyncStatus.MISSED, ImapSyncStatus.IN_SYNC,
+                        null, null);
+            }
+        }
+
+        Date tenMinutesAgo = DateUtils.addMinutes(timeSource.currentTimestamp(), -10);
+        Date threeMinutesAgo = DateUtils.addMinutes(tenMinutesAgo, 7);
+        missedMessages.addAll(imapMessageSyncDataProvider.findMessagesWithSyncStatus(folder, ImapSyncStatus.MISSED,
+                tenMinutesAgo, threeMinutesAgo));
+        return !changedFlags.isEmpty();
+    }
+
+    /**
+     * @return true if new messages have been found
+     */
+    protected boolean handleNewMessages(List<ImapMessage> checkAnswers,
+                                        List<ImapMessage> missedMessages,
+                                        ImapFolder jmixFolder,
+                                        IMAPFolder imapFolder) throws MessagingException {
         log.trace("Handle new messages for folder '{}'", jmixFolder.getName());
         ImapMailBox mailBox = jmixFolder.getMailBox();
         List<IMAPMessage> imapMessages = imapOperations.search(
@@ -204,21 +340,64 @@ public class ImapSynchronizer {
                 mailBox
         );
         if (CollectionUtils.isNotEmpty(imapMessages)) {
-            for (IMAPMessage imapMessage : imapMessages) {
+            for (List<IMAPMessage> batch : ListUtils.partition(imapMessages, getNewMessagesBatchSize())) {
                 if (Boolean.TRUE.equals(imapProperties.isClearCustomFlags())) {
-                    log.trace("[{}]clear custom flags for message with uid {}",
-                            jmixFolder, imapFolder.getUID(imapMessage));
-                    unsetCustomFlags(imapMessage);
+                    for (IMAPMessage imapMessage : batch) {
+                        log.trace("[{}]clear custom flags for message with uid {}",
+                                jmixFolder, imapFolder.getUID(imapMessage));
+                        unsetCustomFlags(imapMessage);
+                    }
                 }
-                imapMessage.setFlags(imapHelper.jmixFlags(mailBox), true);
-                log.debug("[{}]insert message with uid {} to db after changing flags on server",
-                        jmixFolder, imapFolder.getUID(imapMessage));
-                ImapMessage jmixMessage = createMessage(imapMessage, jmixFolder);
-                if (jmixMessage != null && jmixMessage.getReferenceId() != null) {
-                    checkAnswers.add(jmixMessage);
+                Message[] messages = batch.toArray(new Message[0]);
+                Flags jmixFlags = imapHelper.jmixFlags(mailBox);
+                // single STORE command for the whole batch
+                imapFolder.setFlags(messages, jmixFlags, true);
+                log.debug("[{}]insert {} messages to db after changing flags on server", jmixFolder, batch.size());
+                List<ImapMessage> created;
+                try {
+                    created = createMessages(batch, jmixFolder);
+                } catch (MessagingException | RuntimeException e) {
+                    log.warn("[{}]failed to insert {} messages, inserting them one by one", jmixFolder, batch.size(), e);
+                    // flagged messages are not searched anymore, so the batch must not stay flagged
+                    imapFolder.setFlags(messages, jmixFlags, false);
+                    created = createMessagesOneByOne(batch, jmixFolder, jmixFlags);
                 }
+                for (ImapMessage jmixMessage : created) {
+                    if (jmixMessage.getReferenceId() != null) {
+                        checkAnswers.add(jmixMessage);
+                    }
+                }
+            }
+        }
+        return CollectionUtils.isNotEmpty(imapMessages);
+    }
+
+    /**
+     * Flags and saves messages one by one. If a message fails, its flags are cleared so that it is found by
+     * the next synchronization, and the failure is rethrown.
+     */
+    protected List<ImapMessage> createMessagesOneByOne(List<IMAPMessage> msgs,
+                                                       ImapFolder jmixFolder,
+                                                       Flags jmixFlags) throws MessagingException {
+        List<ImapMessage> created = new ArrayList<>(msgs.size());
+        for (IMAPMessage msg : msgs) {
+            msg.setFlags(jmixFlags, true);
+            ImapMessage jmixMessage;
+            try {
+                jmixMessage = createMessage(msg, jmixFolder);
+            } catch (MessagingException | RuntimeException e) {
+                msg.setFlags(jmixFlags, false);
+                throw e;
+            }
+            if (jmixMessage != null) {
+                created.add(jmixMessage);
             }
         }
+        return created;
+    }
+
+    protected int getNewMessagesBatchSize() {
+        return Math.max(imapProperties.getUpdateBatchSize(), 1);
     }
 
     protected void handleMissedMessages(ImapMailBox mailBox, IMAPStore store, List<ImapMessage> missedMessages) throws MessagingException {
@@ -343,17 +522,36 @@ public class ImapSynchronizer {
 
     protected ImapMessage createMessage(IMAPMessage msg,
                                         ImapFolder jmixFolder) throws MessagingException {
+        List<ImapMessage> created = createMessages(Collections.singletonList(msg), jmixFolder);
+        return created.isEmpty() ? null : created.get(0);
+    }
 
-        long uid = ((IMAPFolder) msg.getFolder()).getUID(msg);
+    /**
+     * Saves the messages which are not saved yet in a single transaction, checking the existing UIDs
+     * with one query.
+     *
+     * @return created messages
+     */
+    protected List<ImapMessage> createMessages(List<IMAPMessage> msgs,
+                                               ImapFolder jmixFolder) throws MessagingException {
+        Map<Long, IMAPMessage> messagesByUid = new LinkedHashMap<>();
+        for (IMAPMessage msg : msgs) {
+            messagesByUid.put(((IMAPFolder) msg.getFolder()).getUID(msg), msg);
+        }
         return transaction.execute(status -> {
-            int sameUIDs = entityManager.createQuery(
-                    "select m from imap_Message m where m.msgUid = :uid and m.folder.id = :mailFolderId")
-                    .setParameter("uid", uid)
+            Set<Long> existingUids = new HashSet<>(entityManager.createQuery(
+                    "select m.msgUid from imap_Message m where m.msgUid in :uids and m.folder.id = :mailFolderId",
+                            Long.class)
+                    .setParameter("uids", new ArrayList<>(messagesByUid.keySet()))
                     .setParameter("mailFolderId", jmixFolder.getId())
-                    .setMaxResults(1)
-                    .getResultList()
-                    .size();
-            if (sameUIDs == 0) {
+                    .getResultList());
+
+            List<ImapMessage> created = new ArrayList<>(messagesByUid.size());
+            for (Map.Entry<Long, IMAPMessage> entry : messagesByUid.entrySet()) {
+                if (existingUids.contains(entry.getKey())) {
+                    continue;
+                }
+                IMAPMessage msg = entry.getValue();
                 log.trace("Save new message {}", msg);
                 ImapMessage entity = metadata.create(ImapMessage.class);
                 try {
@@ -369,10 +567,9 @@ public class ImapSynchronizer {
                 messageSync.setFolder(jmixFolder);
                 entityManager.persist(messageSync);
 
-                return entity;
+                created.add(entity);
             }
-
-            return null;
+            return created;
         });
     }
 
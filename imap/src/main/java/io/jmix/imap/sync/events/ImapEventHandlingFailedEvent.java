@@ -0,0 +1,62 @@
+/*
+ * Copyright 2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.jmix.imap.sync.events;
+
+import io.jmix.imap.entity.ImapFolder;
+import io.jmix.imap.events.BaseImapEvent;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published when an event handler attached to a folder fails after all attempts, so that the application can
+ * keep the event for later processing.
+ */
+public class ImapEventHandlingFailedEvent extends ApplicationEvent {
+
+    protected final ImapFolder folder;
+    protected final String beanName;
+    protected final String methodName;
+    protected final Throwable exception;
+
+    public ImapEventHandlingFailedEvent(BaseImapEvent event, ImapFolder folder,
+                                        String beanName, String methodName, Throwable exception) {
+        super(event);
+        this.folder = folder;
+        this.beanName = beanName;
+        this.methodName = methodName;
+        this.exception = exception;
+    }
+
+    public BaseImapEvent getEvent() {
+        return (BaseImapEvent) getSource();
+    }
+
+    public ImapFolder getFolder() {
+        return folder;
+    }
+
+    public String getBeanName() {
+        return beanName;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public Throwable getException() {
+        return exception;
+    }
+}
@@ -19,9 +19,12 @@ package io.jmix.imap.sync.events;
 import io.jmix.core.common.util.ReflectionHelper;
 import io.jmix.core.security.SystemAuthenticator;
 import io.jmix.imap.ImapEventsGenerator;
+import io.jmix.imap.ImapProperties;
 import io.jmix.imap.data.ImapDataProvider;
 import io.jmix.imap.entity.*;
 import io.jmix.imap.events.BaseImapEvent;
+import io.jmix.imap.sync.ImapMailboxSyncActivationEvent;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.commons.collections4.MapUtils;
 import org.apache.commons.lang3.BooleanUtils;
 import org.slf4j.Logger;
@@ -29,19 +32,36 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
+/**
+ * Fires IMAP events generated for folders and invokes the handlers attached to the folder events.
+ * <p>
+ * Handlers resolved for a folder and an event type are cached as method handles bound to the handler beans.
+ * The cache is cleared when folder events, their handlers or mailboxes change. Failed handler invocations are
+ * repeated, and {@link ImapEventHandlingFailedEvent} is published for events which handlers keep failing.
+ */
 @Component("imap_Events")
 public class ImapEvents {
 
     private final static Logger log = LoggerFactory.getLogger(ImapEvents.class);
 
+    protected static final MethodType HANDLER_TYPE = MethodType.methodType(void.class, BaseImapEvent.class);
+
     @Autowired
     protected ApplicationEventPublisher events;
 
@@ -54,6 +74,21 @@ public class ImapEvents {
     @Autowired
     protected ApplicationContext applicationContext;
 
+    @Autowired
+    protected ImapProperties imapProperties;
+
+    @Autowired
+    protected MeterRegistry meterRegistry;
+
+    protected final ConcurrentMap<HandlersKey, List<HandlerInvoker>> handlersCache = new ConcurrentHashMap<>();
+
+    protected final ConcurrentMap<String, ImapEventsGenerator> eventsGenerators = new ConcurrentHashMap<>();
+
+    // incremented on every invalidation, so that handlers resolved from outdated configuration are not cached
+    protected final AtomicLong handlersVersion = new AtomicLong();
+
+    protected final ThreadLocal<ImapFolder> firingFolder = new ThreadLocal<>();
+
     public void init(ImapMailBox mailBox) {
         getEventsGenerator(mailBox).init(mailBox);
     }
@@ -62,6 +97,14 @@ public class ImapEvents {
         getEventsGenerator(mailBox).shutdown(mailBox);
     }
 
+    /**
+     * @return folder which events are being fired in the current thread, e.g. for a listener of IMAP events
+     */
+    @Nullable
+    public ImapFolder getFiringFolder() {
+        return firingFolder.get();
+    }
+
     public void handleNewMessages(ImapFolder folder) {
         fireEvents(folder, getEventsGenerator(folder.getMailBox()).generateForNewMessages(folder));
     }
@@ -74,24 +117,42 @@ public class ImapEvents {
         fireEvents(folder, getEventsGenerator(folder.getMailBox()).generateForMissedMessages(folder));
     }
 
+    /**
+     * Clears cached handlers of folder events. Called when folder events or their handlers change.
+     */
+    public void invalidateHandlers() {
+        handlersVersion.incrementAndGet();
+        handlersCache.clear();
+        eventsGenerators.clear();
+    }
+
+    @EventListener
+    protected void onMailBoxChanged(ImapMailboxSyncActivationEvent event) {
+        invalidateHandlers();
+    }
+
     protected ImapEventsGenerator getEventsGenerator(ImapMailBox mailBox) {
         String eventsGeneratorClassName = mailBox.getEventsGeneratorClass();
         if (eventsGeneratorClassName != null) {
-            Class<?> eventsGeneratorClass = ReflectionHelper.getClass(eventsGeneratorClassName);
-            Map<String, ?> beans = applicationContext.getBeansOfType(eventsGeneratorClass);
-            if (MapUtils.isEmpty(beans)) {
-                return getStandardEventsGenerator();
-            }
-            Map.Entry<String, ?> bean = beans.entrySet().iterator().next();
-            if (!(bean.getValue() instanceof ImapEventsGenerator)) {
-                log.warn("Bean {} is not implementation of ImapEventsGenerator interface", bean.getKey());
-                return getStandardEventsGenerator();
-            }
-            return (ImapEventsGenerator) bean.getValue();
+            return eventsGenerators.computeIfAbsent(eventsGeneratorClassName, this::findEventsGenerator);
         }
         return getStandardEventsGenerator();
     }
 
+    protected ImapEventsGenerator findEventsGenerator(String eventsGeneratorClassName) {
+        Class<?> eventsGeneratorClass = ReflectionHelper.getClass(eventsGeneratorClassName);
+        Map<String, ?> beans = applicationContext.getBeansOfType(eventsGeneratorClass);
+        if (MapUtils.isEmpty(beans)) {
+            return getStandardEventsGenerator();
+        }
+        Map.Entry<String, ?> bean = beans.entrySet().iterator().next();
+        if (!(bean.getValue() instanceof ImapEventsGenerator)) {
+            log.warn("Bean {} is not implementation of ImapEventsGenerator interface", bean.getKey());
+            return getStandardEventsGenerator();
+        }
+        return (ImapEventsGenerator) bean.getValue();
+    }
+
     protected ImapEventsGenerator getStandardEventsGenerator() {
         return (ImapEventsGenerator) applicationContext.getBean("imap_StandardEventsGenerator");
     }
@@ -107,26 +168,21 @@ public class ImapEvents {
 
         log.debug("Filtered events for {}: {}", folder.getId(), imapEvents);
         authentication.begin();
+        firingFolder.set(folder);
         try {
-            ImapFolder freshFolder = imapDataProvider.findFolder(folder);
+            FolderHandlers folderHandlers = new FolderHandlers(folder);
             imapEvents.forEach(event -> {
                 log.trace("firing event {}", event);
                 events.publishEvent(event);
 
-                List<ImapEventHandler> eventHandlers = ImapEventType.getByEventType(event.getClass()).stream()
-                        .map(freshFolder::getEvent)
-                        .filter(Objects::nonNull)
-                        .filter(folderEvent -> BooleanUtils.isTrue(folderEvent.getEnabled()))
-                        .map(ImapFolderEvent::getEventHandlers)
-                        .filter(handlers -> !CollectionUtils.isEmpty(handlers))
-                        .flatMap(Collection::stream)
-                        .collect(Collectors.toList());
+                List<HandlerInvoker> eventHandlers = folderHandlers.get(event.getClass());
                 log.trace("firing event {} using handlers {}", event, eventHandlers);
-                invokeAttachedHandlers(event, freshFolder, eventHandlers);
+                invokeAttachedHandlers(event, folder, eventHandlers);
 
                 log.trace("finish processing event {}", event);
             });
         } finally {
+            firingFolder.remove();
             authentication.end();
         }
     }
@@ -139,36 +195,200 @@ public class ImapEvents {
         }
     }
 
-    protected void invokeAttachedHandlers(BaseImapEvent event, ImapFolder folder, List<ImapEventHandler> handlers) {
+    /**
+     * Invokes the handlers. Must be called with system authentication.
+     */
+    protected void invokeAttachedHandlers(BaseImapEvent event, ImapFolder folder, List<HandlerInvoker> handlers) {
         log.trace("{}: invoking handlers {} for event {}", folder.getName(), handlers, event);
 
-        for (ImapEventHandler handler : handlers) {
+        for (HandlerInvoker handler : handlers) {
+            for (MethodHandle methodHandle : handler.methodHandles) {
+                invokeHandler(event, folder, handler, methodHandle);
+            }
+        }
+    }
+
+    /**
+     * Invokes the handler method, repeating failed invocations up to {@link ImapProperties#getEventsHandlerAttempts()}
+     * times. Publishes {@link ImapEventHandlingFailedEvent} if all attempts fail.
+     */
+    protected void invokeHandler(BaseImapEvent event, ImapFolder folder,
+                                 HandlerInvoker handler, MethodHandle methodHandle) {
+        int attempts = Math.max(imapProperties.getEventsHandlerAttempts(), 1);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                methodHandle.invokeExact(event);
+                return;
+            } catch (Throwable e) {
+                if (e instanceof VirtualMachineError) {
+                    throw (VirtualMachineError) e;
+                }
+                if (attempt >= attempts) {
+                    log.error(String.format("Handler %s failed to handle event %s of folder %s after %d attempts",
+                            handler, event, folder.getName(), attempts), e);
+                    meterRegistry.counter("jmix.imap.Events.failed").increment();
+                    events.publishEvent(new ImapEventHandlingFailedEvent(
+                            event, folder, handler.beanName, handler.methodName, e));
+                    return;
+                }
+                log.warn("Handler {} failed to handle event {} of folder {}, attempt {} of {}",
+                        handler, event, folder.getName(), attempt, attempts, e);
+                if (!sleepBeforeRetry()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    protected boolean sleepBeforeRetry() {
+        try {
+            TimeUnit.MILLISECONDS.sleep(imapProperties.getEventsRetryDelayMillis());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Returns cached handlers of the event type attached to the folder, resolving them if needed.
+     */
+    protected List<HandlerInvoker> getHandlers(ImapFolder folder,
+                                               Class<? extends BaseImapEvent> eventClass,
+                                               FolderHandlers folderHandlers) {
+        HandlersKey key = new HandlersKey(folder.getId(), eventClass);
+        List<HandlerInvoker> handlers = handlersCache.get(key);
+        if (handlers != null) {
+            return handlers;
+        }
+
+        long version = handlersVersion.get();
+        ImapFolder freshFolder = folderHandlers.getFreshFolder();
+        handlers = freshFolder == null
+                ? Collections.emptyList()
+                : resolveHandlers(freshFolder, eventClass);
+        if (handlersVersion.get() == version) {
+            handlersCache.putIfAbsent(key, handlers);
+        }
+        return handlers;
+    }
+
+    protected List<HandlerInvoker> resolveHandlers(ImapFolder folder, Class<? extends BaseImapEvent> eventClass) {
+        List<ImapEventHandler> eventHandlers = ImapEventType.getByEventType(eventClass).stream()
+                .map(folder::getEvent)
+                .filter(Objects::nonNull)
+                .filter(folderEvent -> BooleanUtils.isTrue(folderEvent.getEnabled()))
+                .map(ImapFolderEvent::getEventHandlers)
+                .filter(handlers -> !CollectionUtils.isEmpty(handlers))
+                .flatMap(Collection::stream)
+                .collect(Collectors.toList());
+
+        List<HandlerInvoker> result = new ArrayList<>(eventHandlers.size());
+        for (ImapEventHandler handler : eventHandlers) {
             Object bean = applicationContext.getBean(handler.getBeanName());
             if (bean == null) {
                 log.warn("No bean {} is available, check the folder {} configuration", handler.getBeanName(), folder);
-                return;
+                // the following handlers are not invoked
+                break;
+            }
+            List<Method> methods = Arrays.stream(bean.getClass().getMethods())
+                    .filter(m -> m.getName().equals(handler.getMethodName()))
+                    .filter(m -> m.getParameterTypes().length == 1 && m.getParameterTypes()[0].isAssignableFrom(eventClass))
+                    .collect(Collectors.toList());
+            log.trace("{}: methods to invoke: {}", handler, methods);
+            if (CollectionUtils.isEmpty(methods)) {
+                log.warn("No method {} for bean {} is available, check the folder {} configuration",
+                        handler.getMethodName(), handler.getBeanName(), folder);
             }
-            Class<? extends BaseImapEvent> eventClass = event.getClass();
-            try {
-                authentication.begin();
-                List<Method> methods = Arrays.stream(bean.getClass().getMethods())
-                        .filter(m -> m.getName().equals(handler.getMethodName()))
-                        .filter(m -> m.getParameterTypes().length == 1 && m.getParameterTypes()[0].isAssignableFrom(eventClass))
-                        .collect(Collectors.toList());
-                log.trace("{}: methods to invoke: {}", handler, methods);
-                if (CollectionUtils.isEmpty(methods)) {
-                    log.warn("No method {} for bean {} is available, check the folder {} configuration",
-                            handler.getMethodName(), handler.getBeanName(), folder);
-                }
 
-                for (Method method : methods) {
-                    method.invoke(bean, event);
-                }
-            } catch (InvocationTargetException | IllegalAccessException e) {
-                throw new RuntimeException("Can't invoke bean for imap folder event", e);
-            } finally {
-                authentication.end();
+            List<MethodHandle> methodHandles = new ArrayList<>(methods.size());
+            for (Method method : methods) {
+                methodHandles.add(toMethodHandle(bean, method));
             }
+            result.add(new HandlerInvoker(handler.getBeanName(), handler.getMethodName(), methodHandles));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    protected MethodHandle toMethodHandle(Object bean, Method method) {
+        try {
+            // the bean class may be not public
+            method.trySetAccessible();
+            return MethodHandles.publicLookup().unreflect(method)
+                    .bindTo(bean)
+                    .asType(HANDLER_TYPE);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("Can't invoke bean for imap folder event", e);
+        }
+    }
+
+    /**
+     * Resolves handlers for events of a single folder, loading the folder configuration at most once.
+     */
+    protected class FolderHandlers {
+        protected final ImapFolder folder;
+        protected final Map<Class<? extends BaseImapEvent>, List<HandlerInvoker>> handlers = new HashMap<>();
+        protected ImapFolder freshFolder;
+        protected boolean freshFolderLoaded;
+
+        protected FolderHandlers(ImapFolder folder) {
+            this.folder = folder;
+        }
+
+        protected List<HandlerInvoker> get(Class<? extends BaseImapEvent> eventClass) {
+            return handlers.computeIfAbsent(eventClass, cls -> getHandlers(folder, cls, this));
+        }
+
+        protected ImapFolder getFreshFolder() {
+            if (!freshFolderLoaded) {
+                freshFolder = imapDataProvider.findFolder(folder);
+                freshFolderLoaded = true;
+            }
+            return freshFolder;
+        }
+    }
+
+    protected static class HandlerInvoker {
+        protected final String beanName;
+        protected final String methodName;
+        protected final List<MethodHandle> methodHandles;
+
+        protected HandlerInvoker(String beanName, String methodName, List<MethodHandle> methodHandles) {
+            this.beanName = beanName;
+            this.methodName = methodName;
+            this.methodHandles = methodHandles;
+        }
+
+        @Override
+        public String toString() {
+            return beanName + "#" + methodName;
+        }
+    }
+
+    protected static class HandlersKey {
+        protected final UUID folderId;
+        protected final Class<? extends BaseImapEvent> eventClass;
+
+        protected HandlersKey(UUID folderId, Class<? extends BaseImapEvent> eventClass) {
+            this.folderId = folderId;
+            this.eventClass = eventClass;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            HandlersKey that = (HandlersKey) o;
+            return folderId.equals(that.folderId) && eventClass.equals(that.eventClass);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(folderId, eventClass);
         }
     }
 }
@@ -36,7 +36,6 @@ import org.springframework.transaction.support.TransactionTemplate;
 import jakarta.mail.Flags;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
-import jakarta.persistence.Query;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -234,9 +233,8 @@ public class ImapStandardEventsGenerator extends ImapEventsBatchedGenerator {
                     entityManager.merge(imapMessageSync);
                     missedMessageEvents.add(new EmailMovedImapEvent(message, oldFolder));
                     missedMessageNums.add(message.getMsgNum());
-                    recalculateMessageNumbers(jmixFolder, missedMessageNums);
                 });
-
+                recalculateMessageNumbers(jmixFolder, missedMessageNums);
 
                 return missedMessageEvents;
             });
@@ -249,26 +247,36 @@ public class ImapStandardEventsGenerator extends ImapEventsBatchedGenerator {
         }
     }
 
+    /**
+     * Shifts numbers of the folder messages down to close the gaps left by the missed messages,
+     * with a single update statement.
+     */
     protected void recalculateMessageNumbers(ImapFolder jmixFolder, List<Integer> messageNumbers) {
-        messageNumbers.sort(Comparator.naturalOrder());
+        List<Integer> gaps = messageNumbers.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .sorted(Comparator.reverseOrder())
+                .collect(Collectors.toList());
+        if (gaps.isEmpty()) {
+            return;
+        }
+
+        // a message above k gaps moves down by k; the numbers are integers, so they are inlined
+        StringBuilder shift = new StringBuilder("case");
+        for (int i = 0; i < gaps.size(); i++) {
+            shift.append(" when m.msgNum > ").append(gaps.get(i).intValue())
+                    .append(" then ").append(gaps.size() - i);
+        }
+        shift.append(" else 0 end");
+
         authentication.begin();
         try  {
-            transaction.executeWithoutResult(transactionStatus -> {
-                for (int i = 0; i < messageNumbers.size(); i++) {
-                    String queryString = "update imap_Message m set m.msgNum = m.msgNum-" + (i + 1) +
-                            " where m.folder.id = :mailFolderId and m.msgNum > :msgNum";
-                    if (i < messageNumbers.size() - 1) {
-                        queryString += " and m.msgNum < :topMsgNum";
-                    }
-                    Query query = entityManager.createQuery(queryString)
-                            .setParameter("mailFolderId", jmixFolder.getId())
-                            .setParameter("msgNum", messageNumbers.get(i));
-                    if (i < messageNumbers.size() - 1) {
-                        query.setParameter("topMsgNum", messageNumbers.get(i + 1));
-                    }
-                    query.executeUpdate();
-                }
-            });
+            transaction.executeWithoutResult(transactionStatus -> entityManager.createQuery(
+                            "update imap_Message m set m.msgNum = m.msgNum - " + shift +
+                                    " where m.folder.id = :mailFolderId and m.msgNum > :minMsgNum")
+                    .setParameter("mailFolderId", jmixFolder.getId())
+                    .setParameter("minMsgNum", gaps.get(gaps.size() - 1))
+                    .executeUpdate());
         } finally {
             authentication.end();
         }
@@ -23,22 +23,40 @@ import io.jmix.core.filestore.FileRef;
 import io.jmix.core.filestore.FileStorage;
 import io.jmix.core.filestore.FileStorageException;
 import io.jmix.core.util.UuidProvider;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PreDestroy;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import static java.nio.file.StandardOpenOption.CREATE_NEW;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
@@ -47,6 +65,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 
 @Component("locfs_FileStorage")
@@ -56,6 +75,12 @@ public class LocalFileStorage implements FileStorage {
 
     public static final String DEFAULT_STORAGE_NAME = "fs";
 
+    protected static final int BUFFER_SIZE = 64 * 1024;
+
+    protected static final long POLL_TIMEOUT_MS = 100;
+
+    protected static final byte[] END_OF_DATA = new byte[0];
+
     protected String storageName;
     protected String storageDir;
 
@@ -70,11 +95,19 @@ public class LocalFileStorage implements FileStorage {
 
     protected boolean isImmutableFileStorage;
 
-    protected ExecutorService writeExecutor = Executors.newFixedThreadPool(5,
-            new ThreadFactoryBuilder().setNameFormat("FileStorageWriter-%d").build());
+    @Autowired
+    protected MeterRegistry meterRegistry;
+
+    // replica writers wait for data from the saving thread, so a writer is never queued: when all threads are busy,
+    // the saving thread writes the copy itself
+    protected volatile ExecutorService writeExecutor;
 
     protected volatile Path[] storageRoots;
 
+    protected final Map<Path, Path> realRoots = new ConcurrentHashMap<>();
+
+    protected final Map<Path, Long> unhealthyRoots = new ConcurrentHashMap<>();
+
     public LocalFileStorage() {
         this(DEFAULT_STORAGE_NAME);
     }
@@ -158,55 +191,127 @@ public class LocalFileStorage implements FileStorage {
 
         checkFileExists(path);
 
-        long size;
+        // Secondary storages receive the same data chunks while the primary copy is being written
+        List<ReplicaWriter> replicas = startReplicas(fileRef, roots, relativePath);
+
+        long size = 0;
         long maxAllowedSize = properties.getMaxFileSize().toBytes();
+        boolean completed = false;
         try (OutputStream outputStream = Files.newOutputStream(path, CREATE_NEW)) {
-            size = IOUtils.copyLarge(inputStream, outputStream, 0, maxAllowedSize);
-
-            if (size >= maxAllowedSize) {
-                if (inputStream.read()!=IOUtils.EOF) {
-                    outputStream.close();
-                    if (path.toFile().exists()) {
-                        if (!path.toFile().delete()) {
-                            log.warn("Failed to delete an incorrectly uploaded file '{}'. " +
-                                            "File was to large and has been rejected but already loaded part was not deleted.",
-                                    path.toAbsolutePath());
-                        }
-                        ;
-                    }
-
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = inputStream.read(buffer))!=IOUtils.EOF) {
+                size += read;
+                if (size > maxAllowedSize) {
                     throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION,
                             String.format("File is too large: '%s'. Max file size = %s MB is exceeded but there are unread bytes left.",
                                     path.toAbsolutePath(),
                                     properties.getMaxFileSize().toMegabytes()));
                 }
+                outputStream.write(buffer, 0, read);
+                if (!replicas.isEmpty()) {
+                    byte[] chunk = Arrays.copyOf(buffer, read);
+                    for (ReplicaWriter replica : replicas) {
+                        replica.write(chunk);
+                    }
+                }
             }
             outputStream.flush();
-//            writeLog(path, false);
+            completed = true;
         } catch (IOException e) {
-            FileUtils.deleteQuietly(path.toFile());
             throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, path.toAbsolutePath().toString(), e);
+        } finally {
+            if (!completed) {
+                replicas.forEach(ReplicaWriter::cancel);
+                if (!FileUtils.deleteQuietly(path.toFile()) && path.toFile().exists()) {
+                    log.warn("Failed to delete an incorrectly uploaded file '{}'", path.toAbsolutePath());
+                }
+            }
         }
 
-        // Copy file to secondary storages asynchronously
+        replicas.forEach(ReplicaWriter::finish);
+        awaitRequiredCopies(fileRef, path, replicas, Math.min(properties.getRequiredCopies(), roots.length));
+
+        return size;
+    }
+
+    protected List<ReplicaWriter> startReplicas(FileRef fileRef, Path[] roots, Path relativePath) {
+        if (roots.length < 2) {
+            return Collections.emptyList();
+        }
+        List<ReplicaWriter> replicas = new ArrayList<>(roots.length - 1);
         for (int i = 1; i < roots.length; i++) {
             if (!roots[i].toFile().exists()) {
                 log.error("Error saving {} into {} : directory doesn't exist", fileRef.getFileName(), roots[i]);
                 continue;
             }
+            if (!isRootHealthy(roots[i])) {
+                log.warn("Skip saving {} into unhealthy storage {}", fileRef.getFileName(), roots[i]);
+                meterRegistry.counter("jmix.LocalFileStorage.replication.skipped").increment();
+                continue;
+            }
 
-            Path pathCopy = roots[i].resolve(relativePath);
+            ReplicaWriter replica = new ReplicaWriter(roots[i], roots[i].resolve(relativePath), fileRef.getFileName());
+            ExecutorService executor = getWriteExecutor();
+            try {
+                if (executor == null) {
+                    replica.startInline();
+                } else {
+                    executor.execute(replica);
+                }
+            } catch (RejectedExecutionException e) {
+                meterRegistry.counter("jmix.LocalFileStorage.replication.inline").increment();
+                replica.startInline();
+            }
+            replicas.add(replica);
+        }
+        return replicas;
+    }
 
-            writeExecutor.submit(() -> {
-                try {
-                    FileUtils.copyFile(path.toFile(), pathCopy.toFile(), true);
-                } catch (Exception e) {
-                    log.error("Error saving {} into {} : {}", fileRef.getFileName(), pathCopy, e.getMessage());
+    /**
+     * Returns the executor of replica writers, or null if copies are written by the saving thread.
+     */
+    @Nullable
+    protected ExecutorService getWriteExecutor() {
+        int maxThreads = properties.getMaxReplicationThreads();
+        if (maxThreads <= 0) {
+            return null;
+        }
+        if (writeExecutor == null) {
+            synchronized (this) {
+                if (writeExecutor == null) {
+                    writeExecutor = new ThreadPoolExecutor(0, maxThreads, 60L, TimeUnit.SECONDS,
+                            new SynchronousQueue<>(),
+                            new ThreadFactoryBuilder().setNameFormat("FileStorageWriter-%d").build());
                 }
-            });
+            }
         }
+        return writeExecutor;
+    }
 
-        return size;
+    /**
+     * Waits until the number of written copies reaches {@link LocalFileStorageProperties#getRequiredCopies()}.
+     * The primary copy is already written at this point.
+     */
+    protected void awaitRequiredCopies(FileRef fileRef, Path primaryPath, List<ReplicaWriter> replicas,
+                                       int requiredCopies) {
+        int writtenCopies = 1;
+        for (ReplicaWriter replica : replicas) {
+            if (writtenCopies >= requiredCopies) {
+                break;
+            }
+            if (replica.await()) {
+                writtenCopies++;
+            }
+        }
+
+        if (writtenCopies < requiredCopies) {
+            replicas.forEach(replica -> FileUtils.deleteQuietly(replica.path.toFile()));
+            FileUtils.deleteQuietly(primaryPath.toFile());
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION,
+                    String.format("Only %d of %d required copies of '%s' have been saved",
+                            writtenCopies, requiredCopies, fileRef.getFileName()));
+        }
     }
 
     @Override
@@ -224,6 +329,45 @@ public class LocalFileStorage implements FileStorage {
 
     @Override
     public InputStream openStream(FileRef reference) {
+        return openFirstAvailable(reference, Files::newInputStream);
+    }
+
+    @Override
+    public InputStream openStream(FileRef reference, long offset, long length) {
+        return Channels.newInputStream(openChannel(reference, offset, length));
+    }
+
+    @Override
+    public ReadableByteChannel openChannel(FileRef reference, long offset, long length) {
+        checkRange(offset, length);
+        FileChannel channel = openFirstAvailable(reference, path -> FileChannel.open(path, StandardOpenOption.READ));
+        return new FileRangeChannel(channel, offset, length);
+    }
+
+    @Override
+    public long transferTo(FileRef reference, long offset, long length, WritableByteChannel target) {
+        checkRange(offset, length);
+        try (FileChannel channel = openFirstAvailable(reference, path -> FileChannel.open(path, StandardOpenOption.READ))) {
+            long end = offset + Math.min(length, Math.max(channel.size() - offset, 0));
+            long position = offset;
+            while (position < end) {
+                long transferred = channel.transferTo(position, end - position, target);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
+            return position - offset;
+        } catch (IOException e) {
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, reference.toString(), e);
+        }
+    }
+
+    /**
+     * Opens the file in the first healthy storage directory which contains it. Unhealthy directories are tried
+     * last, as they may be the only ones holding the file.
+     */
+    protected <T> T openFirstAvailable(FileRef reference, FileOpener<T> opener) {
         Path relativePath = getRelativePath(reference.getPath());
 
         Path[] roots = getStorageRoots();
@@ -232,31 +376,37 @@ public class LocalFileStorage implements FileStorage {
             throw new FileStorageException(FileStorageException.Type.FILE_NOT_FOUND, reference.toString());
         }
 
-        InputStream inputStream = null;
+        List<Path> orderedRoots = new ArrayList<>(roots.length);
+        List<Path> unhealthy = new ArrayList<>();
         for (Path root : roots) {
-            Path path = root.resolve(relativePath);
-
-            if (!path.toFile().exists()) {
-                log.error("File " + path + " not found");
-                continue;
-            }
+            (isRootHealthy(root) ? orderedRoots : unhealthy).add(root);
+        }
+        orderedRoots.addAll(unhealthy);
 
+        for (Path root : orderedRoots) {
+            Path path = root.resolve(relativePath);
             try {
-                if (!Boolean.TRUE.equals(disablePathCheck) && !path.toRealPath().startsWith(root.toRealPath())) {
+                if (!Boolean.TRUE.equals(disablePathCheck) && !path.toRealPath().startsWith(getRealRoot(root))) {
                     log.error("File '{}' is outside of root dir '{}': ", path, root);
                     continue;
                 }
 
-                inputStream = Files.newInputStream(path);
+                return opener.open(path);
+            } catch (NoSuchFileException e) {
+                log.debug("File {} not found", path);
             } catch (IOException e) {
                 log.error("Error opening input stream for " + path, e);
+                markRootUnhealthyIfInaccessible(root);
             }
         }
 
-        if (inputStream!=null) {
-            return inputStream;
-        } else {
-            throw new FileStorageException(FileStorageException.Type.FILE_NOT_FOUND, reference.toString());
+        log.error("File {} not found", reference);
+        throw new FileStorageException(FileStorageException.Type.FILE_NOT_FOUND, reference.toString());
+    }
+
+    protected void checkRange(long offset, long length) {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("Invalid range: offset=" + offset + ", length=" + length);
         }
     }
 
@@ -307,6 +457,49 @@ public class LocalFileStorage implements FileStorage {
                 StringUtils.leftPad(String.valueOf(day), 2, '0'));
     }
 
+    protected Path getRealRoot(Path root) throws IOException {
+        Path realRoot = realRoots.get(root);
+        if (realRoot==null) {
+            realRoot = root.toRealPath();
+            realRoots.put(root, realRoot);
+        }
+        return realRoot;
+    }
+
+    /**
+     * Returns false if the storage directory has failed recently and should not be accessed until
+     * {@link LocalFileStorageProperties#getUnhealthyRootRecheckInterval()} passes.
+     */
+    protected boolean isRootHealthy(Path root) {
+        Long unhealthyUntil = unhealthyRoots.get(root);
+        if (unhealthyUntil==null) {
+            return true;
+        }
+        if (System.currentTimeMillis() < unhealthyUntil) {
+            return false;
+        }
+        unhealthyRoots.remove(root, unhealthyUntil);
+        return true;
+    }
+
+    /**
+     * Marks the storage directory as unhealthy after a failed file operation if the directory itself cannot be
+     * accessed. Failures of separate files, such as a file without read permission, do not affect the directory.
+     */
+    protected void markRootUnhealthyIfInaccessible(Path root) {
+        if (!Files.isDirectory(root) || !Files.isReadable(root) || !Files.isWritable(root)) {
+            markRootUnhealthy(root);
+        }
+    }
+
+    protected void markRootUnhealthy(Path root) {
+        if (getStorageRoots().length > 1) {
+            log.warn("Storage directory {} is marked as unhealthy", root);
+            unhealthyRoots.put(root,
+                    System.currentTimeMillis() + properties.getUnhealthyRootRecheckInterval().toMillis());
+        }
+    }
+
     protected void checkFileExists(Path path) {
         if (Files.exists(path) && isImmutableFileStorage) {
             throw new FileStorageException(FileStorageException.Type.FILE_ALREADY_EXISTS,
@@ -364,7 +557,203 @@ public class LocalFileStorage implements FileStorage {
 
     @PreDestroy
     protected void stopWriteExecutor() {
-        writeExecutor.shutdown();
+        if (writeExecutor != null) {
+            writeExecutor.shutdown();
+        }
+    }
+
+    @FunctionalInterface
+    protected interface FileOpener<T> {
+        T open(Path path) throws IOException;
+    }
+
+    /**
+     * Channel reading a range of the file with positional reads, so the underlying channel position is not used.
+     */
+    protected static class FileRangeChannel implements ReadableByteChannel {
+        protected final FileChannel channel;
+        protected final long end;
+        protected long position;
+
+        public FileRangeChannel(FileChannel channel, long offset, long length) {
+            this.channel = channel;
+            this.position = offset;
+            this.end = length > Long.MAX_VALUE - offset ? Long.MAX_VALUE : offset + length;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (position >= end) {
+                return IOUtils.EOF;
+            }
+            int limit = dst.limit();
+            long remaining = end - position;
+            if (dst.remaining() > remaining) {
+                dst.limit(dst.position() + (int) remaining);
+            }
+            try {
+                int read = channel.read(dst, position);
+                if (read > 0) {
+                    position += read;
+                }
+                return read;
+            } finally {
+                dst.limit(limit);
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Writes a copy of the file to a secondary storage directory from data chunks passed by the thread
+     * which saves the primary copy. The chunks queue is bounded, so a slow directory slows down saving
+     * instead of accumulating the file in memory. If the writer is {@link #startInline() started inline},
+     * the chunks are written directly by the saving thread.
+     */
+    protected class ReplicaWriter implements Runnable {
+        protected final Path root;
+        protected final Path path;
+        protected final String fileName;
+        protected final BlockingQueue<byte[]> chunks;
+        protected final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        protected volatile boolean stopped;
+        protected OutputStream inlineStream;
+
+        public ReplicaWriter(Path root, Path path, String fileName) {
+            this.root = root;
+            this.path = path;
+            this.fileName = fileName;
+            this.chunks = new ArrayBlockingQueue<>(Math.max(properties.getReplicationQueueCapacity(), 1));
+        }
+
+        /**
+         * Opens the copy for writing by the saving thread instead of running the writer in its own thread.
+         */
+        public void startInline() {
+            try {
+                createParentDir();
+                inlineStream = Files.newOutputStream(path);
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        public void write(byte[] chunk) {
+            if (stopped) {
+                return;
+            }
+            if (inlineStream != null) {
+                writeInline(chunk);
+                return;
+            }
+            if (chunks.offer(chunk)) {
+                return;
+            }
+            Timer.Sample sample = Timer.start(meterRegistry);
+            try {
+                while (!stopped && !chunks.offer(chunk, POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    // wait for the replica to catch up
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+            } finally {
+                sample.stop(meterRegistry.timer("jmix.LocalFileStorage.replication.wait"));
+            }
+        }
+
+        public void finish() {
+            write(END_OF_DATA);
+        }
+
+        protected void writeInline(byte[] chunk) {
+            try {
+                if (chunk==END_OF_DATA) {
+                    inlineStream.close();
+                    result.complete(true);
+                } else {
+                    inlineStream.write(chunk);
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        public void cancel() {
+            stopped = true;
+            chunks.clear();
+            if (inlineStream != null) {
+                IOUtils.closeQuietly(inlineStream);
+                if (!result.isDone()) {
+                    FileUtils.deleteQuietly(path.toFile());
+                    result.complete(false);
+                }
+            }
+        }
+
+        /**
+         * @return true if the copy has been written successfully
+         */
+        public boolean await() {
+            return result.join();
+        }
+
+        @Override
+        public void run() {
+            try {
+                createParentDir();
+                boolean completed = false;
+                try (OutputStream outputStream = Files.newOutputStream(path)) {
+                    while (true) {
+                        byte[] chunk = chunks.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                        if (stopped) {
+                            break;
+                        }
+                        if (chunk==END_OF_DATA) {
+                            completed = true;
+                            break;
+                        }
+                        if (chunk!=null) {
+                            outputStream.write(chunk);
+                        }
+                    }
+                }
+                // the copy is successful only if the stream is closed without errors
+                if (completed) {
+                    result.complete(true);
+                    return;
+                }
+                FileUtils.deleteQuietly(path.toFile());
+                result.complete(false);
+            } catch (Exception e) {
+                fail(e);
+            }
+        }
+
+        protected void createParentDir() throws IOException {
+            Path parentPath = path.getParent();
+            if (parentPath!=null && !parentPath.toFile().exists() && !parentPath.toFile().mkdirs()) {
+                throw new IOException("Cannot create directory: " + parentPath.toAbsolutePath());
+            }
+        }
+
+        protected void fail(Exception e) {
+            log.error("Error saving {} into {} : {}", fileName, path, e.getMessage());
+            meterRegistry.counter("jmix.LocalFileStorage.replication.failed").increment();
+            cancel();
+            FileUtils.deleteQuietly(path.toFile());
+            markRootUnhealthyIfInaccessible(root);
+            result.complete(false);
+        }
     }
 
 }
@@ -16,6 +16,7 @@
 
 package io.jmix.localfs;
 
+import java.time.Duration;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.bind.DefaultValue;
 import org.springframework.util.unit.DataSize;
@@ -33,11 +34,42 @@ public class LocalFileStorageProperties {
      */
     DataSize maxFileSize;
 
+    /**
+     * Number of storage directories the file must be written to before saving returns. Copies to the remaining
+     * directories are completed in background. The first directory of {@link #storageDir} is always written.
+     */
+    int requiredCopies;
+
+    /**
+     * Maximum number of data chunks buffered for each secondary storage directory. If a directory is slower than
+     * the incoming stream, saving waits until the buffered chunks are written.
+     */
+    int replicationQueueCapacity;
+
+    /**
+     * Maximum number of threads writing copies to secondary storage directories. When all of them are busy,
+     * or if the value is 0, the thread saving the file writes the copies itself.
+     */
+    int maxReplicationThreads;
+
+    /**
+     * Time during which a storage directory that failed to read or write is skipped.
+     */
+    Duration unhealthyRootRecheckInterval;
+
     public LocalFileStorageProperties(
             String storageDir,
-            @DefaultValue("100MB") DataSize maxFileSize) {
+            @DefaultValue("100MB") DataSize maxFileSize,
+            @DefaultValue("1") int requiredCopies,
+            @DefaultValue("16") int replicationQueueCapacity,
+            @DefaultValue("16") int maxReplicationThreads,
+            @DefaultValue("30s") Duration unhealthyRootRecheckInterval) {
         this.storageDir = storageDir;
         this.maxFileSize = maxFileSize;
+        this.requiredCopies = requiredCopies;
+        this.replicationQueueCapacity = replicationQueueCapacity;
+        this.maxReplicationThreads = maxReplicationThreads;
+        this.unhealthyRootRecheckInterval = unhealthyRootRecheckInterval;
     }
 
     /**
@@ -53,4 +85,32 @@ public class LocalFileStorageProperties {
     public DataSize getMaxFileSize() {
         return maxFileSize;
     }
+
+    /**
+     * @see #requiredCopies
+     */
+    public int getRequiredCopies() {
+        return requiredCopies;
+    }
+
+    /**
+     * @see #replicationQueueCapacity
+     */
+    public int getReplicationQueueCapacity() {
+        return replicationQueueCapacity;
+    }
+
+    /**
+     * @see #maxReplicationThreads
+     */
+    public int getMaxReplicationThreads() {
+        return maxReplicationThreads;
+    }
+
+    /**
+     * @see #unhealthyRootRecheckInterval
+     */
+    public Duration getUnhealthyRootRecheckInterval() {
+        return unhealthyRootRecheckInterval;
+    }
 }
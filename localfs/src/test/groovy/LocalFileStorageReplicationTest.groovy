@@ -0,0 +1,128 @@
+/*
+ * Copyright 2020 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+import io.jmix.core.filestore.FileRef
+import io.jmix.core.filestore.FileStorageException
+import io.jmix.localfs.LocalFileStorage
+import io.jmix.localfs.LocalFileStorageProperties
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.apache.commons.io.IOUtils
+import org.springframework.util.unit.DataSize
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.time.Duration
+
+class LocalFileStorageReplicationTest extends Specification {
+
+    static final byte[] CONTENT = 'Test output'.getBytes()
+
+    Path primaryDir
+    Path secondaryDir
+
+    def setup() {
+        primaryDir = Files.createTempDirectory("file-storage-primary")
+        secondaryDir = Files.createTempDirectory("file-storage-secondary")
+    }
+
+    def cleanup() {
+        primaryDir.toFile().deleteDir()
+        secondaryDir.toFile().deleteDir()
+    }
+
+    def "file is written to all storage directories"() {
+        def storage = createStorage(maxReplicationThreads)
+
+        when:
+        FileRef fileRef = storage.saveStream("test.txt", new ByteArrayInputStream(CONTENT))
+
+        then:
+        Files.readAllBytes(primaryDir.resolve(fileRef.path)) == CONTENT
+        Files.readAllBytes(secondaryDir.resolve(fileRef.path)) == CONTENT
+
+        cleanup:
+        storage.stopWriteExecutor()
+
+        where:
+        maxReplicationThreads << [16, 0]
+    }
+
+    def "file is read from another directory if the first one has lost it"() {
+        def storage = createStorage(16)
+        FileRef fileRef = storage.saveStream("test.txt", new ByteArrayInputStream(CONTENT))
+
+        when:
+        Files.delete(primaryDir.resolve(fileRef.path))
+
+        then:
+        IOUtils.toByteArray(storage.openStream(fileRef)) == CONTENT
+
+        cleanup:
+        storage.stopWriteExecutor()
+    }
+
+    def "file is read from an unhealthy directory if no other directory has it"() {
+        def storage = createStorage(16)
+        FileRef fileRef = storage.saveStream("test.txt", new ByteArrayInputStream(CONTENT))
+        Files.delete(primaryDir.resolve(fileRef.path))
+
+        when:
+        storage.markRootUnhealthy(secondaryDir)
+
+        then:
+        !storage.isRootHealthy(secondaryDir)
+        IOUtils.toByteArray(storage.openStream(fileRef)) == CONTENT
+
+        when:
+        Files.delete(secondaryDir.resolve(fileRef.path))
+        storage.openStream(fileRef)
+
+        then:
+        thrown(FileStorageException)
+
+        cleanup:
+        storage.stopWriteExecutor()
+    }
+
+    def "failure of a single file does not make the directory unhealthy"() {
+        def storage = createStorage(16)
+        FileRef fileRef = storage.saveStream("test.txt", new ByteArrayInputStream(CONTENT))
+
+        when:
+        storage.openFirstAvailable(fileRef, { path -> throw new IOException("Access denied: $path") }
+                as LocalFileStorage.FileOpener)
+
+        then:
+        thrown(FileStorageException)
+        storage.isRootHealthy(primaryDir)
+        storage.isRootHealthy(secondaryDir)
+        IOUtils.toByteArray(storage.openStream(fileRef)) == CONTENT
+
+        cleanup:
+        storage.stopWriteExecutor()
+    }
+
+    LocalFileStorage createStorage(int maxReplicationThreads) {
+        def storage = new LocalFileStorage("testFs", "$primaryDir,$secondaryDir")
+        storage.@properties = new LocalFileStorageProperties(null, DataSize.ofMegabytes(100), 2, 16,
+                maxReplicationThreads, Duration.ofSeconds(30))
+        storage.@meterRegistry = new SimpleMeterRegistry()
+        storage.@disablePathCheck = false
+        return storage
+    }
+}
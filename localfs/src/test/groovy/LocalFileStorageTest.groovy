@@ -18,7 +18,9 @@
 import io.jmix.core.FileRef
 import io.jmix.core.FileStorage
 import io.jmix.core.CoreConfiguration
+import io.jmix.core.filestore.CachingFileStorage
 import io.jmix.localfs.LocalFileStorageConfiguration
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
 import org.apache.commons.io.IOUtils
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.test.context.ContextConfiguration
@@ -26,6 +28,8 @@ import spock.lang.Specification
 import test_support.LocalFileStorageTestConfiguration
 import test_support.TestContextInititalizer
 
+import java.nio.file.Files
+
 @ContextConfiguration(
         classes = [CoreConfiguration, LocalFileStorageConfiguration, LocalFileStorageTestConfiguration],
         initializers = [TestContextInititalizer]
@@ -47,6 +51,49 @@ class LocalFileStorageTest extends Specification {
         fileStorage.removeFile(fileRef)
     }
 
+    def "load range of file using file storage"() {
+        byte[] a = 'Test output'.getBytes()
+        FileRef fileRef = fileStorage.saveStream("test.txt", new ByteArrayInputStream(a))
+
+        expect:
+        IOUtils.toByteArray(fileStorage.openStream(fileRef, 5, 3)) == 'out'.getBytes()
+        IOUtils.toByteArray(fileStorage.openStream(fileRef, 5, 100)) == 'output'.getBytes()
+        IOUtils.toByteArray(fileStorage.openStream(fileRef, 100, 3)).length == 0
+
+        cleanup:
+        fileStorage.removeFile(fileRef)
+    }
+
+    def "load file through local cache"() {
+        def meterRegistry = new SimpleMeterRegistry()
+        def cacheDir = Files.createTempDirectory("file-storage-cache")
+        def cachingStorage = new CachingFileStorage(fileStorage, cacheDir, 1024, meterRegistry)
+        byte[] a = 'Test output'.getBytes()
+        FileRef fileRef = cachingStorage.saveStream("test.txt", new ByteArrayInputStream(a))
+
+        when:
+        byte[] first = IOUtils.toByteArray(cachingStorage.openStream(fileRef))
+        byte[] second = IOUtils.toByteArray(cachingStorage.openStream(fileRef))
+
+        then:
+        first == a
+        second == a
+        IOUtils.toByteArray(cachingStorage.openStream(fileRef, 5, 3)) == 'out'.getBytes()
+        meterRegistry.counter("jmix.FileStorage.cache.miss", "storage", "testFs").count() == 1
+        meterRegistry.counter("jmix.FileStorage.cache.hit", "storage", "testFs").count() == 2
+        cachingStorage.currentSize == a.length
+
+        when:
+        cachingStorage.removeFile(fileRef)
+
+        then:
+        cachingStorage.currentSize == 0
+        !fileStorage.fileExists(fileRef)
+
+        cleanup:
+        cacheDir.toFile().deleteDir()
+    }
+
     def "FileRef format"() {
         when: "FileRef as URI string"
         def fileRefString = 'fs://2021/01/25/60680137-5d4a-69a0-999e-526acf141308.png?name=1.txt&testParam=foo'
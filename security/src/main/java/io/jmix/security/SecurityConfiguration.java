@@ -43,6 +43,7 @@ import io.jmix.security.user.substitution.UserSubstitutionProvider;
 import io.jmix.security.user.substitution.impl.DefaultCurrentUserSubstitution;
 import io.jmix.security.user.substitution.impl.DefaultUserSubstitutionManager;
 import io.jmix.security.user.substitution.impl.InMemoryUserSubstitutionProvider;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
@@ -109,8 +110,10 @@ public class SecurityConfiguration {
     }
 
     @Bean
-    public SystemAuthenticator systemAuthenticator(AuthenticationManager authenticationManager) {
-        return new SystemAuthenticatorImpl(authenticationManager);
+    public SystemAuthenticator systemAuthenticator(AuthenticationManager authenticationManager,
+                                                   SecurityProperties securityProperties,
+                                                   MeterRegistry meterRegistry) {
+        return new SystemAuthenticatorImpl(authenticationManager, securityProperties, meterRegistry);
     }
 
     @Bean
@@ -19,7 +19,51 @@ package io.jmix.security;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.time.Duration;
+
 @Data
 @ConfigurationProperties(prefix = "jmix.security")
 public class SecurityProperties {
+
+    /**
+     * How long authentications created by {@link io.jmix.security.authentication.SystemAuthenticator#begin(String)}
+     * are reused. Zero disables caching.
+     */
+    private Duration systemAuthenticationCacheTtl = Duration.ofSeconds(60);
+
+    /**
+     * Maximum number of users which authentications created by
+     * {@link io.jmix.security.authentication.SystemAuthenticator#begin(String)} are cached.
+     */
+    private int systemAuthenticationCacheSize = 1000;
+
+    /**
+     * How long {@link io.jmix.security.user.CompositeUserRepository} remembers the repository that provided a user,
+     * loading the user directly from it. Meanwhile, a user added to a repository which comes earlier is not
+     * noticed. Zero disables routing, so every load asks the repositories in order.
+     */
+    private Duration userRepositoryRoutingCacheTtl = Duration.ZERO;
+
+    /**
+     * Maximum number of usernames for which {@link io.jmix.security.user.CompositeUserRepository} remembers
+     * the repository that provided the user.
+     */
+    private int userRepositoryRoutingCacheSize = 10000;
+
+    /**
+     * How long {@link io.jmix.security.user.CompositeUserRepository} remembers that a username is not found in any
+     * repository. Zero disables caching of unknown usernames.
+     */
+    private Duration userRepositoryNotFoundCacheTtl = Duration.ZERO;
+
+    /**
+     * Maximum number of unknown usernames remembered by {@link io.jmix.security.user.CompositeUserRepository}.
+     */
+    private int userRepositoryNotFoundCacheSize = 10000;
+
+    /**
+     * How long {@link io.jmix.security.user.CompositeUserRepository} waits for a repository when searching users.
+     * Results of repositories which do not respond in time are skipped.
+     */
+    private Duration userRepositorySearchTimeout = Duration.ofSeconds(10);
 }
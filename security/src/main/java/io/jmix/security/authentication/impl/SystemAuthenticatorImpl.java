@@ -17,13 +17,19 @@
 package io.jmix.security.authentication.impl;
 
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import io.jmix.core.JmixOrder;
+import io.jmix.security.SecurityProperties;
 import io.jmix.security.authentication.SystemAuthenticatorSupport;
 import io.jmix.security.authentication.SystemAuthenticator;
 import io.jmix.security.authentication.token.SystemAuthenticationToken;
+import io.jmix.security.user.event.AbstractUserInvalidationEvent;
+import io.jmix.security.user.event.UserPasswordChangedEvent;
 import io.jmix.security.util.SecurityContextHelper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.util.concurrent.Callable;
-import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.event.ContextRefreshedEvent;
@@ -32,17 +38,48 @@ import org.springframework.core.annotation.Order;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
-import org.springframework.stereotype.Component;
 
 import org.springframework.lang.Nullable;
 
-@RequiredArgsConstructor
+/**
+ * Authenticates through the {@link AuthenticationManager}. Resulting authentications are cached for
+ * {@link SecurityProperties#getSystemAuthenticationCacheTtl()}, so repeated calls of {@link #begin(String)} for the
+ * same user do not load the user again. Cached authentications of a user are dropped when the user is disabled,
+ * removed or their password is changed.
+ */
 public class SystemAuthenticatorImpl extends SystemAuthenticatorSupport implements SystemAuthenticator {
 
     private static final Logger log = LoggerFactory.getLogger(SystemAuthenticatorImpl.class);
 
+    // key of the system authentication in the cache
+    protected static final String SYSTEM_KEY = "";
+
     protected final AuthenticationManager authenticationManager;
 
+    @Nullable
+    protected final Cache<String, Authentication> authenticationCache;
+
+    protected final Counter hitCounter;
+    protected final Counter missCounter;
+
+    public SystemAuthenticatorImpl(AuthenticationManager authenticationManager,
+                                   SecurityProperties securityProperties,
+                                   MeterRegistry meterRegistry) {
+        this.authenticationManager = authenticationManager;
+
+        if (securityProperties.getSystemAuthenticationCacheTtl().isZero()) {
+            authenticationCache = null;
+        } else {
+            authenticationCache = CacheBuilder.newBuilder()
+                    .expireAfterWrite(securityProperties.getSystemAuthenticationCacheTtl())
+                    .maximumSize(securityProperties.getSystemAuthenticationCacheSize())
+                    .build();
+            meterRegistry.gauge("jmix.SystemAuthenticator.cache.size", authenticationCache, Cache::size);
+        }
+        hitCounter = meterRegistry.counter("jmix.SystemAuthenticator.cache.hit");
+        missCounter = meterRegistry.counter("jmix.SystemAuthenticator.cache.miss");
+    }
+
     @EventListener
     @Order(JmixOrder.HIGHEST_PRECEDENCE + 5)
     protected void beginServerSessionOnStartup(ContextRefreshedEvent event) {
@@ -67,16 +104,17 @@ public class SystemAuthenticatorImpl extends SystemAuthenticatorSupport implemen
 
         pushAuthentication(SecurityContextHelper.getAuthentication());
         try {
-            Authentication authentication;
-
-            if (!Strings.isNullOrEmpty(login)) {
-                log.info("Authenticating as {}", login);
-                Authentication authToken = new SystemAuthenticationToken(login);
-                authentication = authenticationManager.authenticate(authToken);
+            String key = Strings.isNullOrEmpty(login) ? SYSTEM_KEY : login;
+            Authentication authentication = authenticationCache == null ? null : authenticationCache.getIfPresent(key);
+            if (authentication != null) {
+                log.trace("Using cached authentication of {}", authentication.getName());
+                hitCounter.increment();
             } else {
-                log.info("Authenticating as system");
-                Authentication authToken = new SystemAuthenticationToken(null);
-                authentication = authenticationManager.authenticate(authToken);
+                missCounter.increment();
+                authentication = authenticate(login);
+                if (authenticationCache != null) {
+                    authenticationCache.put(key, authentication);
+                }
             }
 
             SecurityContextHelper.setAuthentication(authentication);
@@ -88,6 +126,46 @@ public class SystemAuthenticatorImpl extends SystemAuthenticatorSupport implemen
         }
     }
 
+    protected Authentication authenticate(@Nullable String login) {
+        if (!Strings.isNullOrEmpty(login)) {
+            log.info("Authenticating as {}", login);
+            Authentication authToken = new SystemAuthenticationToken(login);
+            return authenticationManager.authenticate(authToken);
+        } else {
+            log.info("Authenticating as system");
+            Authentication authToken = new SystemAuthenticationToken(null);
+            return authenticationManager.authenticate(authToken);
+        }
+    }
+
+    /**
+     * Removes the cached authentication of the user.
+     */
+    public void invalidate(String login) {
+        if (authenticationCache != null) {
+            authenticationCache.invalidate(login);
+        }
+    }
+
+    /**
+     * Removes all cached authentications.
+     */
+    public void invalidateAll() {
+        if (authenticationCache != null) {
+            authenticationCache.invalidateAll();
+        }
+    }
+
+    @EventListener
+    protected void onUserInvalidation(AbstractUserInvalidationEvent event) {
+        invalidate(event.getUsername());
+    }
+
+    @EventListener
+    protected void onUserPasswordChanged(UserPasswordChangedEvent event) {
+        event.getUsernames().forEach(this::invalidate);
+    }
+
     @Override
     public Authentication begin() {
         return begin(null);
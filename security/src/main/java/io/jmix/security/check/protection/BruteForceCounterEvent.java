@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2008-2016 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.jmix.security.check.protection;
+
+import io.jmix.core.cluster.ClusterApplicationEvent;
+
+/**
+ * Sends a change of a brute-force counter to other application instances.
+ *
+ * @see ClusterBruteForceCounterStore
+ */
+public class BruteForceCounterEvent extends ClusterApplicationEvent {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String nodeId;
+    private final Type type;
+    private final long windowMillis;
+
+    public BruteForceCounterEvent(String key, String nodeId, Type type, long windowMillis) {
+        super(key);
+        this.nodeId = nodeId;
+        this.type = type;
+        this.windowMillis = windowMillis;
+    }
+
+    public String getKey() {
+        return (String) getSource();
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    public enum Type {
+        INCREMENT, RESET
+    }
+}
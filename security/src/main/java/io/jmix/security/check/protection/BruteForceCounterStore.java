@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2008-2016 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.jmix.security.check.protection;
+
+import java.time.Duration;
+
+/**
+ * Storage of unsuccessful login attempt counters used by {@link BruteForceProtectionImpl}.
+ * <p>
+ * Counters are sliding-window: only attempts registered within the given window are counted.
+ * The implementation is selected by the {@code jmix.security.bruteforceprotection.counter-store} application
+ * property which contains the bean name.
+ *
+ * @see InMemoryBruteForceCounterStore
+ * @see ClusterBruteForceCounterStore
+ */
+public interface BruteForceCounterStore {
+
+    /**
+     * Registers an attempt for the key.
+     *
+     * @param key    counter key
+     * @param window time window of the counter
+     * @return number of attempts registered for the key within the window, including this one
+     */
+    long increment(String key, Duration window);
+
+    /**
+     * @param key    counter key
+     * @param window time window of the counter
+     * @return number of attempts registered for the key within the window
+     */
+    long getCount(String key, Duration window);
+
+    /**
+     * Removes all attempts registered for the key.
+     */
+    void reset(String key);
+}
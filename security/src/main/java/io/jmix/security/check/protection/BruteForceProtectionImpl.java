@@ -16,59 +16,66 @@
 
 package io.jmix.security.check.protection;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import com.google.common.base.Strings;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Component;
 
-import jakarta.annotation.Nonnull;
 import jakarta.annotation.PostConstruct;
-import java.util.concurrent.ExecutionException;
 
+/**
+ * Counts unsuccessful login attempts in a {@link BruteForceCounterStore} within a sliding window of
+ * {@link BruteForceProtectionProperties#getBlockInterval()}. Attempts are limited per username and IP address pair
+ * and, optionally, per IP address and per username. Attempts per IP address and per username can be counted in a
+ * separate {@link BruteForceProtectionProperties#getAggregateCounterStore() store}.
+ */
 @Component("sec_BruteForceProtection")
 public class BruteForceProtectionImpl implements BruteForceProtection {
-    private LoadingCache<String, Integer> attemptsCache;
+    // prefix of the keys counting attempts of a username from an IP address
+    static final String PAIR_KEY_PREFIX = "p|";
+
     @Autowired
     private BruteForceProtectionProperties properties;
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    private BruteForceCounterStore counterStore;
+    private BruteForceCounterStore aggregateCounterStore;
 
     @PostConstruct
     protected void init() {
-        attemptsCache = CacheBuilder.newBuilder()
-                .expireAfterWrite(properties.getBlockInterval())
-                .build(new CacheLoader<String, Integer>() {
-                    @Override
-                    public Integer load(@Nonnull String key) throws Exception {
-                        return 0;
-                    }
-                });
+        counterStore = applicationContext.getBean(properties.getCounterStore(), BruteForceCounterStore.class);
+        aggregateCounterStore = Strings.isNullOrEmpty(properties.getAggregateCounterStore())
+                ? counterStore
+                : applicationContext.getBean(properties.getAggregateCounterStore(), BruteForceCounterStore.class);
     }
 
     @Override
     public boolean isBlocked(String username, String ipAddress) {
-        try {
-            String cacheKey = makeCacheKey(username, ipAddress);
-            Integer attemptsNumber = attemptsCache.get(cacheKey);
-            return attemptsNumber >= properties.getMaxLoginAttemptsNumber();
-        } catch (ExecutionException e) {
-            throw new RuntimeException("BruteForce protection error", e);
-        }
+        return counterStore.getCount(makeCacheKey(username, ipAddress), properties.getBlockInterval())
+                >= properties.getMaxLoginAttemptsNumber()
+                || isExceeded(makeIpKey(ipAddress), properties.getMaxLoginAttemptsPerIp())
+                || isExceeded(makeUsernameKey(username), properties.getMaxLoginAttemptsPerUsername());
     }
 
     @Override
     public void registerLoginFailed(String username, String ipAddress) {
-        try {
-            String cacheKey = makeCacheKey(username, ipAddress);
-            Integer attemptsNumber = attemptsCache.get(cacheKey);
-            attemptsCache.put(cacheKey, attemptsNumber + 1);
-        } catch (ExecutionException e) {
-            throw new RuntimeException("BruteForce protection error", e);
+        counterStore.increment(makeCacheKey(username, ipAddress), properties.getBlockInterval());
+        if (properties.getMaxLoginAttemptsPerIp() > 0) {
+            aggregateCounterStore.increment(makeIpKey(ipAddress), properties.getBlockInterval());
+        }
+        if (properties.getMaxLoginAttemptsPerUsername() > 0) {
+            aggregateCounterStore.increment(makeUsernameKey(username), properties.getBlockInterval());
         }
     }
 
     @Override
     public void registerLoginSucceeded(String username, String ipAddress) {
-        attemptsCache.invalidate(makeCacheKey(username, ipAddress));
+        counterStore.reset(makeCacheKey(username, ipAddress));
+        if (properties.getMaxLoginAttemptsPerUsername() > 0) {
+            aggregateCounterStore.reset(makeUsernameKey(username));
+        }
+        // a successful login from an IP address does not excuse failures for other usernames
     }
 
     @Override
@@ -76,7 +83,19 @@ public class BruteForceProtectionImpl implements BruteForceProtection {
         return properties.isEnabled();
     }
 
+    private boolean isExceeded(String key, int maxAttempts) {
+        return maxAttempts > 0 && aggregateCounterStore.getCount(key, properties.getBlockInterval()) >= maxAttempts;
+    }
+
     private String makeCacheKey(String login, String ipAddress) {
-        return login + "|" + ipAddress;
+        return PAIR_KEY_PREFIX + login + "|" + ipAddress;
+    }
+
+    private String makeIpKey(String ipAddress) {
+        return "i|" + ipAddress;
+    }
+
+    private String makeUsernameKey(String login) {
+        return "u|" + login;
     }
-}
\ No newline at end of file
+}
@@ -42,14 +42,72 @@ public class BruteForceProtectionProperties {
      */
     private final int maxLoginAttemptsNumber;
 
+    /**
+     * Maximum number of unsuccessful authentication attempts from an IP address for any usernames within
+     * {@link #blockInterval}. 0 means no limit.
+     */
+    private final int maxLoginAttemptsPerIp;
+
+    /**
+     * Maximum number of unsuccessful authentication attempts for a username from any IP addresses within
+     * {@link #blockInterval}. 0 means no limit.
+     */
+    private final int maxLoginAttemptsPerUsername;
+
+    /**
+     * Maximum number of counters kept in memory. Limits memory consumption under a flood of attempts
+     * with distinct usernames or IP addresses.
+     */
+    private final int maxTrackedKeys;
+
+    /**
+     * Name of the {@link BruteForceCounterStore} bean. Set to {@code sec_ClusterBruteForceCounterStore}
+     * to share counters between application instances of a cluster, or to {@code sec_SketchBruteForceCounterStore}
+     * to count attempts in fixed memory.
+     */
+    private final String counterStore;
+
+    /**
+     * Name of the {@link BruteForceCounterStore} bean for attempts per IP address and per username, see
+     * {@link #maxLoginAttemptsPerIp} and {@link #maxLoginAttemptsPerUsername}. Empty value means that
+     * {@link #counterStore} is used. Set to {@code sec_SketchBruteForceCounterStore} to count these attempts in fixed
+     * memory while attempts per username and IP address pair are counted exactly by {@link #counterStore}.
+     */
+    private final String aggregateCounterStore;
+
+    /**
+     * Number of counters in a row of the sketch used by {@code sec_SketchBruteForceCounterStore}. Larger values
+     * reduce overestimation of attempts caused by colliding keys.
+     */
+    private final int sketchWidth;
+
+    /**
+     * Number of rows of the sketch used by {@code sec_SketchBruteForceCounterStore}.
+     */
+    private final int sketchDepth;
+
     public BruteForceProtectionProperties(
             @DefaultValue("false") boolean enabled,
             @DurationUnit(ChronoUnit.SECONDS)
             @DefaultValue("60") Duration blockInterval,
-            @DefaultValue("5") int maxLoginAttemptsNumber) {
+            @DefaultValue("5") int maxLoginAttemptsNumber,
+            @DefaultValue("0") int maxLoginAttemptsPerIp,
+            @DefaultValue("0") int maxLoginAttemptsPerUsername,
+            @DefaultValue("100000") int maxTrackedKeys,
+            @DefaultValue("sec_InMemoryBruteForceCounterStore") String counterStore,
+            @DefaultValue("") String aggregateCounterStore,
+            @DefaultValue("65536") int sketchWidth,
+            @DefaultValue("4") int sketchDepth) {
         this.enabled = enabled;
         this.blockInterval = blockInterval;
         this.maxLoginAttemptsNumber = maxLoginAttemptsNumber;
+        this.maxLoginAttemptsPerIp = maxLoginAttemptsPerIp;
+        this.maxLoginAttemptsPerUsername = maxLoginAttemptsPerUsername;
+        this.maxTrackedKeys = maxTrackedKeys;
+        this.counterStore = counterStore;
+        this.aggregateCounterStore = aggregateCounterStore;
+        this.sketchWidth = sketchWidth;
+        this.sketchDepth = sketchDepth;
     }
 
     /**
@@ -72,4 +130,53 @@ public class BruteForceProtectionProperties {
     public int getMaxLoginAttemptsNumber() {
         return maxLoginAttemptsNumber;
     }
+
+    /**
+     * @see #maxLoginAttemptsPerIp
+     */
+    public int getMaxLoginAttemptsPerIp() {
+        return maxLoginAttemptsPerIp;
+    }
+
+    /**
+     * @see #maxLoginAttemptsPerUsername
+     */
+    public int getMaxLoginAttemptsPerUsername() {
+        return maxLoginAttemptsPerUsername;
+    }
+
+    /**
+     * @see #maxTrackedKeys
+     */
+    public int getMaxTrackedKeys() {
+        return maxTrackedKeys;
+    }
+
+    /**
+     * @see #counterStore
+     */
+    public String getCounterStore() {
+        return counterStore;
+    }
+
+    /**
+     * @see #aggregateCounterStore
+     */
+    public String getAggregateCounterStore() {
+        return aggregateCounterStore;
+    }
+
+    /**
+     * @see #sketchWidth
+     */
+    public int getSketchWidth() {
+        return sketchWidth;
+    }
+
+    /**
+     * @see #sketchDepth
+     */
+    public int getSketchDepth() {
+        return sketchDepth;
+    }
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2008-2016 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.jmix.security.check.protection;
+
+import io.jmix.core.cluster.ClusterApplicationEventPublisher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * {@link BruteForceCounterStore} shared by all application instances of a cluster.
+ * <p>
+ * Attempts are counted locally as in {@link InMemoryBruteForceCounterStore} and sent to other instances with
+ * {@link ClusterApplicationEventPublisher}, e.g. over Hazelcast, so an attacker spreading attempts across
+ * instances is blocked after the same number of attempts as on a single instance.
+ */
+@Component("sec_ClusterBruteForceCounterStore")
+public class ClusterBruteForceCounterStore extends InMemoryBruteForceCounterStore {
+
+    @Autowired
+    protected ClusterApplicationEventPublisher clusterEventPublisher;
+
+    protected final String nodeId = UUID.randomUUID().toString();
+
+    @Override
+    public long increment(String key, Duration window) {
+        long count = super.increment(key, window);
+        clusterEventPublisher.publish(
+                new BruteForceCounterEvent(key, nodeId, BruteForceCounterEvent.Type.INCREMENT, window.toMillis()));
+        return count;
+    }
+
+    @Override
+    public void reset(String key) {
+        super.reset(key);
+        clusterEventPublisher.publish(
+                new BruteForceCounterEvent(key, nodeId, BruteForceCounterEvent.Type.RESET, 0));
+    }
+
+    @EventListener
+    protected void onCounterEvent(BruteForceCounterEvent event) {
+        if (nodeId.equals(event.getNodeId())) {
+            // already applied
+            return;
+        }
+        if (event.getType() == BruteForceCounterEvent.Type.INCREMENT) {
+            super.increment(event.getKey(), Duration.ofMillis(event.getWindowMillis()));
+        } else {
+            super.reset(event.getKey());
+        }
+    }
+}
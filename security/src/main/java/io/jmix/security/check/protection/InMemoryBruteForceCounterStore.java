@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2008-2016 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.jmix.security.check.protection;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Node-local {@link BruteForceCounterStore}.
+ * <p>
+ * Each counter splits its window into buckets which are updated with compare-and-set, so concurrent attempts
+ * are never lost and no locks are taken. The number of counters is limited by
+ * {@link BruteForceProtectionProperties#getMaxTrackedKeys()}: when it is exceeded, expired counters are removed
+ * and then counters with few attempts, starting from the smallest count. Counters which reached half of
+ * {@link BruteForceProtectionProperties#getMaxLoginAttemptsNumber()} are never removed, so a flood of attempts
+ * with distinct keys cannot reset the counter of an attacked account. If no counter can be removed, attempts
+ * with new keys are counted in {@link SketchBruteForceCounterStore}, which has a fixed size. Attempts of username
+ * and IP address pairs are not counted there: a credential stuffing flood has too many distinct pairs for the sketch,
+ * and its overestimated counts would block legitimate users. Such attempts are not counted until the pair can be
+ * tracked again, while the pairs which are tracked already keep their counts.
+ */
+@Component("sec_InMemoryBruteForceCounterStore")
+public class InMemoryBruteForceCounterStore implements BruteForceCounterStore {
+
+    protected static final int BUCKETS = 10;
+
+    protected static final long SHRINK_INTERVAL_MILLIS = 1000;
+
+    @Autowired
+    protected BruteForceProtectionProperties properties;
+
+    @Autowired
+    protected SketchBruteForceCounterStore overflowStore;
+
+    protected final Map<String, WindowCounter> counters = new ConcurrentHashMap<>();
+
+    protected final AtomicBoolean shrinking = new AtomicBoolean();
+    protected volatile long lastShrinkTime;
+    // last time an attempt was counted in the overflow store
+    protected volatile long lastOverflowTime;
+
+    @Override
+    public long increment(String key, Duration window) {
+        long now = System.currentTimeMillis();
+        WindowCounter counter = counters.get(key);
+        if (counter == null) {
+            if (counters.size() >= properties.getMaxTrackedKeys()) {
+                shrink(now);
+                if (counters.size() >= properties.getMaxTrackedKeys()) {
+                    if (!isOverflowCounted(key)) {
+                        return 0;
+                    }
+                    lastOverflowTime = now;
+                    return overflowStore.increment(key, window);
+                }
+            }
+            counter = counters.computeIfAbsent(key, k -> createCounter(k, window, now));
+        }
+        return counter.increment(now);
+    }
+
+    @Override
+    public long getCount(String key, Duration window) {
+        WindowCounter counter = counters.get(key);
+        if (counter != null) {
+            return counter.count(System.currentTimeMillis());
+        }
+        return isOverflowCounted(key) && isOverflowActive(window) ? overflowStore.getCount(key, window) : 0;
+    }
+
+    @Override
+    public void reset(String key) {
+        counters.remove(key);
+        if (lastOverflowTime != 0) {
+            overflowStore.reset(key);
+        }
+    }
+
+    protected WindowCounter createCounter(String key, Duration window, long now) {
+        WindowCounter counter = new WindowCounter(window.toMillis());
+        if (isOverflowCounted(key) && isOverflowActive(window)) {
+            // attempts made while the key could not be tracked
+            counter.add(now, overflowStore.getCount(key, window));
+        }
+        return counter;
+    }
+
+    /**
+     * Returns whether attempts of the key are counted in the overflow store while the key cannot be tracked.
+     */
+    protected boolean isOverflowCounted(String key) {
+        return !key.startsWith(BruteForceProtectionImpl.PAIR_KEY_PREFIX);
+    }
+
+    protected boolean isOverflowActive(Duration window) {
+        return lastOverflowTime != 0 && System.currentTimeMillis() - lastOverflowTime < window.toMillis();
+    }
+
+    /**
+     * Removes expired counters, then counters with the smallest number of attempts below the protected threshold
+     * until 90% of the limit is reached. Does nothing if another thread is shrinking or the previous shrinking
+     * was less than a second ago.
+     */
+    protected void shrink(long now) {
+        if (now - lastShrinkTime < SHRINK_INTERVAL_MILLIS || !shrinking.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            lastShrinkTime = now;
+            long targetSize = properties.getMaxTrackedKeys() * 9L / 10;
+            counters.values().removeIf(counter -> counter.isExpired(now));
+            long protectedCount = getProtectedCount();
+            for (long count = 1; count < protectedCount && counters.size() > targetSize; count++) {
+                long maxCount = count;
+                counters.values().removeIf(counter -> counter.count(now) <= maxCount);
+            }
+        } finally {
+            shrinking.set(false);
+        }
+    }
+
+    /**
+     * Returns the number of attempts from which a counter is never removed to free memory.
+     */
+    protected long getProtectedCount() {
+        return Math.max((properties.getMaxLoginAttemptsNumber() + 1) / 2, 2);
+    }
+
+    /**
+     * Sliding-window counter. Each bucket holds its number and its count packed into a single long.
+     */
+    protected static class WindowCounter {
+        protected static final int COUNT_BITS = 20;
+        protected static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+        protected final long bucketMillis;
+        protected final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        protected volatile long lastUpdate;
+
+        protected WindowCounter(long windowMillis) {
+            this.bucketMillis = Math.max(windowMillis / BUCKETS, 1);
+        }
+
+        protected long increment(long now) {
+            add(now, 1);
+            return count(now);
+        }
+
+        protected void add(long now, long attempts) {
+            long bucket = now / bucketMillis;
+            int slot = (int) (bucket % BUCKETS);
+            long value;
+            long updated;
+            do {
+                value = buckets.get(slot);
+                long count = value >>> COUNT_BITS == bucket ? value & COUNT_MASK : 0;
+                updated = (bucket << COUNT_BITS) | Math.min(count + attempts, COUNT_MASK);
+            } while (!buckets.compareAndSet(slot, value, updated));
+            lastUpdate = now;
+        }
+
+        protected long count(long now) {
+            long bucket = now / bucketMillis;
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                long value = buckets.get(i);
+                if (bucket - (value >>> COUNT_BITS) < BUCKETS) {
+                    total += value & COUNT_MASK;
+                }
+            }
+            return total;
+        }
+
+        protected boolean isExpired(long now) {
+            return now - lastUpdate >= bucketMillis * BUCKETS;
+        }
+    }
+}
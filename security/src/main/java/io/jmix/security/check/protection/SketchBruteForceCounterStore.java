@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2008-2016 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.jmix.security.check.protection;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link BruteForceCounterStore} of a fixed size which does not depend on the number of counted keys.
+ * <p>
+ * Attempts are counted in a time-decayed Count-Min Sketch: the window is split into buckets, each bucket is a
+ * {@link BruteForceProtectionProperties#getSketchDepth() depth} x {@link BruteForceProtectionProperties#getSketchWidth()
+ * width} table of counters, and a key is counted in one cell of every row chosen by a row-specific hash. The count
+ * of a key is the smallest of its cells, so it is never lower than the real number of attempts but can be higher
+ * if other keys share all the cells. Cells are updated conservatively: an attempt raises only the cells which are
+ * below the new count of the key, which keeps the overestimation low while the number of distinct keys within the
+ * window is not much larger than the width. Nothing is stored per key, so a flood of attempts does not consume memory.
+ * <p>
+ * The sketch suits keys with moderate cardinality, such as IP addresses and usernames, see
+ * {@link BruteForceProtectionProperties#getAggregateCounterStore()}. With millions of distinct keys per window,
+ * e.g. username and IP address pairs under credential stuffing, all counts become overestimated.
+ * <p>
+ * {@link #reset(String)} remembers the current count of the key and subtracts it afterwards. The number of
+ * remembered keys is limited by {@link BruteForceProtectionProperties#getMaxTrackedKeys()}.
+ */
+@Component("sec_SketchBruteForceCounterStore")
+public class SketchBruteForceCounterStore implements BruteForceCounterStore {
+
+    protected static final int BUCKETS = 6;
+
+    protected static final int LOCKS = 64;
+
+    @Autowired
+    protected BruteForceProtectionProperties properties;
+
+    // random hash seed, so that keys colliding in the sketch cannot be chosen in advance
+    protected final long seed = new SecureRandom().nextLong();
+
+    protected int depth;
+    protected int width;
+
+    // bucket number of each slot
+    protected final AtomicLongArray bucketNumbers = new AtomicLongArray(BUCKETS);
+    protected AtomicIntegerArray[] tables;
+
+    // attempts of the same key are serialized, otherwise concurrent conservative updates could be lost
+    protected final Object[] locks = new Object[LOCKS];
+
+    // counts of reset keys at the moment of reset, access-ordered, guarded by itself
+    protected Map<String, Baseline> baselines;
+
+    @PostConstruct
+    protected void init() {
+        depth = Math.max(properties.getSketchDepth(), 1);
+        width = Math.max(properties.getSketchWidth(), 1);
+        tables = new AtomicIntegerArray[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            tables[i] = new AtomicIntegerArray(depth * width);
+            bucketNumbers.set(i, -1);
+        }
+        for (int i = 0; i < LOCKS; i++) {
+            locks[i] = new Object();
+        }
+        int maxBaselines = Math.max(properties.getMaxTrackedKeys(), 1);
+        baselines = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Baseline> eldest) {
+                return size() > maxBaselines;
+            }
+        };
+    }
+
+    @Override
+    public long increment(String key, Duration window) {
+        long bucket = getBucketNumber(window);
+        int slot = (int) (bucket % BUCKETS);
+        AtomicIntegerArray table = getTable(slot, bucket);
+        int[] cells = getCells(key);
+        synchronized (locks[Math.floorMod(cells[0], LOCKS)]) {
+            int min = getMin(table, cells);
+            if (min < Integer.MAX_VALUE) {
+                int updated = min + 1;
+                for (int cell : cells) {
+                    table.accumulateAndGet(cell, updated, Math::max);
+                }
+            }
+        }
+        return count(key, cells, bucket);
+    }
+
+    @Override
+    public long getCount(String key, Duration window) {
+        return count(key, getCells(key), getBucketNumber(window));
+    }
+
+    @Override
+    public void reset(String key) {
+        int[] cells = getCells(key);
+        Baseline baseline = new Baseline();
+        for (int slot = 0; slot < BUCKETS; slot++) {
+            baseline.bucketNumbers[slot] = bucketNumbers.get(slot);
+            baseline.counts[slot] = getMin(tables[slot], cells);
+        }
+        synchronized (baselines) {
+            baselines.put(key, baseline);
+        }
+    }
+
+    protected long count(String key, int[] cells, long bucket) {
+        Baseline baseline;
+        synchronized (baselines) {
+            baseline = baselines.isEmpty() ? null : baselines.get(key);
+        }
+        long total = 0;
+        for (int slot = 0; slot < BUCKETS; slot++) {
+            long slotBucket = bucketNumbers.get(slot);
+            if (bucket - slotBucket >= BUCKETS) {
+                continue;
+            }
+            int min = getMin(tables[slot], cells);
+            if (baseline != null && baseline.bucketNumbers[slot] == slotBucket) {
+                min = Math.max(min - baseline.counts[slot], 0);
+            }
+            total += min;
+        }
+        return total;
+    }
+
+    protected int getMin(AtomicIntegerArray table, int[] cells) {
+        int min = Integer.MAX_VALUE;
+        for (int cell : cells) {
+            min = Math.min(min, table.get(cell));
+        }
+        return min;
+    }
+
+    protected long getBucketNumber(Duration window) {
+        long bucketMillis = Math.max(window.toMillis() / BUCKETS, 1);
+        return System.currentTimeMillis() / bucketMillis;
+    }
+
+    /**
+     * Returns the table of the slot, clearing it if it contains attempts of an expired bucket.
+     */
+    protected AtomicIntegerArray getTable(int slot, long bucket) {
+        AtomicIntegerArray table = tables[slot];
+        if (bucketNumbers.get(slot) != bucket) {
+            synchronized (table) {
+                if (bucketNumbers.get(slot) != bucket) {
+                    for (int i = 0; i < table.length(); i++) {
+                        table.set(i, 0);
+                    }
+                    bucketNumbers.set(slot, bucket);
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Returns indexes of the cells of the key, one in each row.
+     */
+    protected int[] getCells(String key) {
+        long hash = seed;
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * 0x100000001B3L;
+        }
+        hash = mix(hash);
+        int[] cells = new int[depth];
+        for (int row = 0; row < depth; row++) {
+            // double hashing: row hashes are derived from the two halves of a 64-bit hash
+            int rowHash = (int) hash + row * (int) (hash >>> 32);
+            cells[row] = row * width + Math.floorMod(rowHash, width);
+        }
+        return cells;
+    }
+
+    protected static long mix(long value) {
+        long h = value ^ (value >>> 33);
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB93FE1BCA32BL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    protected static class Baseline {
+        protected final long[] bucketNumbers = new long[BUCKETS];
+        protected final int[] counts = new int[BUCKETS];
+    }
+}
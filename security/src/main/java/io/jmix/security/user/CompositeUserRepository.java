@@ -1,13 +1,31 @@
 package io.jmix.security.user;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.jmix.security.SecurityProperties;
+import io.jmix.security.user.event.AbstractUserInvalidationEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.lang.Nullable;
+import org.springframework.security.concurrent.DelegatingSecurityContextExecutorService;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * An implementation of {@link UserRepository} that compose all {@link UserRepository}s
@@ -16,6 +34,12 @@ import java.util.stream.Collectors;
  * For methods that return a single result, it returns the result of the first successful method execution
  * by the delegates (the first one that hasn't ended up with an exception).
  * Method returning a collection includes the results obtained from all the delegates.
+ * <p>
+ * The delegate which provided a user can be remembered for {@link SecurityProperties#getUserRepositoryRoutingCacheTtl()},
+ * so that subsequent loads of the user go directly to it. Usernames not found in any delegate can be remembered for
+ * {@link SecurityProperties#getUserRepositoryNotFoundCacheTtl()}. Both are forgotten for a user on
+ * {@link AbstractUserInvalidationEvent} or by {@link #invalidate(String)}. Searches by substring query the
+ * delegates in parallel, waiting for each at most {@link SecurityProperties#getUserRepositorySearchTimeout()}.
  */
 public class CompositeUserRepository implements UserRepository {
 
@@ -24,6 +48,71 @@ public class CompositeUserRepository implements UserRepository {
     @Autowired
     protected List<UserRepository> userRepositories;
 
+    @Autowired
+    protected SecurityProperties securityProperties;
+
+    @Autowired
+    protected MeterRegistry meterRegistry;
+
+    @Nullable
+    protected Cache<String, UserRepository> ownerCache;
+    @Nullable
+    protected Cache<String, Boolean> notFoundCache;
+
+    protected ExecutorService searchExecutor;
+
+    protected Timer loadTimer;
+
+    @PostConstruct
+    protected void init() {
+        if (!securityProperties.getUserRepositoryRoutingCacheTtl().isZero()) {
+            ownerCache = CacheBuilder.newBuilder()
+                    .expireAfterWrite(securityProperties.getUserRepositoryRoutingCacheTtl())
+                    .maximumSize(securityProperties.getUserRepositoryRoutingCacheSize())
+                    .build();
+        }
+        if (!securityProperties.getUserRepositoryNotFoundCacheTtl().isZero()) {
+            notFoundCache = CacheBuilder.newBuilder()
+                    .expireAfterWrite(securityProperties.getUserRepositoryNotFoundCacheTtl())
+                    .maximumSize(securityProperties.getUserRepositoryNotFoundCacheSize())
+                    .build();
+        }
+
+        AtomicInteger threadNumber = new AtomicInteger(1);
+        // delegates see the security context of the calling thread
+        searchExecutor = new DelegatingSecurityContextExecutorService(Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "UserRepositorySearch-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }));
+
+        loadTimer = Timer.builder("jmix.CompositeUserRepository.load")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    protected void shutdown() {
+        searchExecutor.shutdownNow();
+    }
+
+    /**
+     * Forgets the delegate which provided the user and whether the user was not found.
+     */
+    public void invalidate(String username) {
+        if (ownerCache != null) {
+            ownerCache.invalidate(username);
+        }
+        if (notFoundCache != null) {
+            notFoundCache.invalidate(username);
+        }
+    }
+
+    @EventListener
+    protected void onUserInvalidation(AbstractUserInvalidationEvent event) {
+        invalidate(event.getUsername());
+    }
+
     @Override
     public UserDetails getSystemUser() {
         for (UserRepository delegate : userRepositories) {
@@ -57,14 +146,69 @@ public class CompositeUserRepository implements UserRepository {
 
     @Override
     public List<? extends UserDetails> getByUsernameLike(String substring) {
-        return userRepositories.stream()
-                .flatMap(userRepository -> userRepository.getByUsernameLike(substring).stream())
-                .collect(Collectors.toList());
+        if (userRepositories.size() == 1) {
+            return userRepositories.get(0).getByUsernameLike(substring);
+        }
+
+        List<Future<List<? extends UserDetails>>> futures = new ArrayList<>(userRepositories.size());
+        for (UserRepository delegate : userRepositories) {
+            futures.add(searchExecutor.submit(() -> delegate.getByUsernameLike(substring)));
+        }
+
+        List<UserDetails> result = new ArrayList<>();
+        long deadline = System.nanoTime() + securityProperties.getUserRepositorySearchTimeout().toNanos();
+        for (int i = 0; i < futures.size(); i++) {
+            Future<List<? extends UserDetails>> future = futures.get(i);
+            try {
+                result.addAll(future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                log.warn("User repository {} did not return users like '{}' in time, its results are skipped",
+                        userRepositories.get(i).getClass().getName(), substring);
+            } catch (InterruptedException e) {
+                futures.forEach(f -> f.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while searching users", e);
+            } catch (ExecutionException e) {
+                futures.forEach(f -> f.cancel(true));
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException("Failed to search users", e.getCause());
+            }
+        }
+        return result;
     }
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return loadUser(username);
+        } finally {
+            sample.stop(loadTimer);
+        }
+    }
+
+    protected UserDetails loadUser(String username) {
+        if (notFoundCache != null && notFoundCache.getIfPresent(username) != null) {
+            throw new UsernameNotFoundException("User '" + username + "' not found");
+        }
+
+        UserRepository owner = ownerCache == null ? null : ownerCache.getIfPresent(username);
+        if (owner != null) {
+            try {
+                return owner.loadUserByUsername(username);
+            } catch (UsernameNotFoundException e) {
+                // the user has been removed or moved to another repository
+                ownerCache.invalidate(username);
+            }
+        }
+
         for (UserRepository delegate : userRepositories) {
+            if (delegate == owner) {
+                continue;
+            }
             UserDetails userDetails;
             try {
                 userDetails = delegate.loadUserByUsername(username);
@@ -75,8 +219,14 @@ public class CompositeUserRepository implements UserRepository {
                 }
                 continue;
             }
+            if (ownerCache != null) {
+                ownerCache.put(username, delegate);
+            }
             return userDetails;
         }
+        if (notFoundCache != null) {
+            notFoundCache.put(username, Boolean.TRUE);
+        }
         throw new UsernameNotFoundException("User '" + username + "' not found");
     }
 }
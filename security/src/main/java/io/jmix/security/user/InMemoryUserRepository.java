@@ -17,19 +17,37 @@
 package io.jmix.security.user;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import org.springframework.security.core.CredentialsContainer;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 
+/**
+ * {@link UserRepository} keeping users in memory.
+ * <p>
+ * Users are indexed by username, so lookups do not depend on the number of users. Substring search uses an index of
+ * username trigrams, prefix search uses the sorted usernames. Users can be added and removed while other threads
+ * read the repository; modifications are serialized.
+ */
 public class InMemoryUserRepository implements UserRepository {
 
+    protected static final int GRAM_LENGTH = 3;
+
     protected UserDetails systemUser;
     protected UserDetails anonymousUser;
-    protected List<UserDetails> users = new ArrayList<>();
+    protected final ConcurrentNavigableMap<String, UserDetails> users = new ConcurrentSkipListMap<>();
+    // usernames by trigrams they contain
+    protected final ConcurrentMap<String, Set<String>> usernamesByGram = new ConcurrentHashMap<>();
 
     public InMemoryUserRepository() {
         initServiceUsers();
@@ -58,11 +76,11 @@ public class InMemoryUserRepository implements UserRepository {
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        return users.stream()
-                .filter(user -> user.getUsername().equals(username))
-                .findAny()
-                .map(this::copyUserDetails)
-                .orElseThrow(() -> new UsernameNotFoundException("User '" + username + "' not found"));
+        UserDetails user = users.get(username);
+        if (user == null) {
+            throw new UsernameNotFoundException("User '" + username + "' not found");
+        }
+        return copyUserDetails(user);
     }
 
     @Override
@@ -75,21 +93,90 @@ public class InMemoryUserRepository implements UserRepository {
         return anonymousUser;
     }
 
+    /**
+     * Returns users whose username contains the given substring, sorted by username.
+     */
     @Override
     public List<UserDetails> getByUsernameLike(String substring) {
-        return users.stream()
-                .filter(user -> user.getUsername().contains(substring))
-                .collect(Collectors.toList());
+        if (substring.length() < GRAM_LENGTH) {
+            List<UserDetails> result = new ArrayList<>();
+            for (UserDetails user : users.values()) {
+                if (user.getUsername().contains(substring)) {
+                    result.add(user);
+                }
+            }
+            return result;
+        }
+
+        // every username containing the substring contains all its trigrams, so checking the rarest one is enough
+        Set<String> candidates = null;
+        for (int i = 0; i + GRAM_LENGTH <= substring.length(); i++) {
+            Set<String> usernames = usernamesByGram.get(substring.substring(i, i + GRAM_LENGTH));
+            if (usernames == null) {
+                return new ArrayList<>();
+            }
+            if (candidates == null || usernames.size() < candidates.size()) {
+                candidates = usernames;
+            }
+        }
+        List<UserDetails> result = new ArrayList<>();
+        for (String username : candidates) {
+            UserDetails user = users.get(username);
+            if (user != null && username.contains(substring)) {
+                result.add(user);
+            }
+        }
+        // the same order as found by a short substring
+        result.sort(Comparator.comparing(UserDetails::getUsername));
+        return result;
     }
 
-    public void addUser(UserDetails user) {
-        users.add(user);
+    /**
+     * Returns users whose username starts with the given prefix, sorted by username.
+     */
+    public List<UserDetails> getByUsernamePrefix(String prefix) {
+        Collection<UserDetails> found = prefix.isEmpty()
+                ? users.values()
+                : users.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values();
+        return new ArrayList<>(found);
     }
 
-    public void removeUser(UserDetails user) {
-        users.remove(user);
+    /**
+     * Adds the user, replacing a user with the same username.
+     */
+    public synchronized void addUser(UserDetails user) {
+        String username = user.getUsername();
+        users.put(username, user);
+        for (String gram : getGrams(username)) {
+            usernamesByGram.computeIfAbsent(gram, k -> ConcurrentHashMap.newKeySet()).add(username);
+        }
+    }
+
+    public synchronized void removeUser(UserDetails user) {
+        String username = user.getUsername();
+        if (users.remove(username) == null) {
+            return;
+        }
+        for (String gram : getGrams(username)) {
+            usernamesByGram.computeIfPresent(gram, (k, usernames) -> {
+                usernames.remove(username);
+                return usernames.isEmpty() ? null : usernames;
+            });
+        }
+    }
+
+    protected Set<String> getGrams(String username) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= username.length(); i++) {
+            grams.add(username.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
     }
 
+    /**
+     * Copies users which credentials can be erased, so that erasing them after authentication does not affect
+     * the stored user. Other users are returned as is.
+     */
     protected UserDetails copyUserDetails(UserDetails userDetails) {
         if (userDetails instanceof CredentialsContainer) {
             return User.withUserDetails(userDetails).build();
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package authentication
+
+import io.jmix.security.SecurityProperties
+import io.jmix.security.authentication.impl.SystemAuthenticatorImpl
+import io.jmix.security.authentication.token.SystemAuthenticationToken
+import io.jmix.security.user.event.UserDisabledEvent
+import io.jmix.security.user.event.UserPasswordChangedEvent
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.security.authentication.AuthenticationManager
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken
+import org.springframework.security.core.Authentication
+import org.springframework.security.core.context.SecurityContextHolder
+import spock.lang.Specification
+
+import java.time.Duration
+
+class SystemAuthenticatorCacheTest extends Specification {
+
+    AuthenticationManager authenticationManager = Mock()
+
+    SecurityProperties properties = new SecurityProperties()
+
+    SystemAuthenticatorImpl authenticator
+
+    def setup() {
+        authenticator = new SystemAuthenticatorImpl(authenticationManager, properties, new SimpleMeterRegistry())
+    }
+
+    def cleanup() {
+        SecurityContextHolder.clearContext()
+    }
+
+    def "cached authentication is reused"() {
+        when:
+
+        def first = authenticate('user1')
+        def second = authenticate('user1')
+
+        then:
+
+        1 * authenticationManager.authenticate(_ as SystemAuthenticationToken) >> authenticated('user1')
+        second.is(first)
+        SecurityContextHolder.context.authentication == null
+    }
+
+    def "authentications of different users and of system are cached separately"() {
+        when:
+
+        def user1 = authenticate('user1')
+        def user2 = authenticate('user2')
+        def system = authenticate(null)
+
+        then:
+
+        3 * authenticationManager.authenticate(_ as SystemAuthenticationToken) >>>
+                [authenticated('user1'), authenticated('user2'), authenticated('system')]
+
+        when:
+
+        def cachedUser1 = authenticate('user1')
+        def cachedUser2 = authenticate('user2')
+        def cachedSystem = authenticate(null)
+
+        then:
+
+        0 * authenticationManager.authenticate(_)
+        cachedUser1.is(user1)
+        cachedUser2.is(user2)
+        cachedSystem.is(system)
+    }
+
+    def "cached authentication is dropped when the user is disabled"() {
+        given:
+
+        authenticationManager.authenticate(_ as SystemAuthenticationToken) >>>
+                [authenticated('user1'), authenticated('user2')]
+        def user1 = authenticate('user1')
+        def user2 = authenticate('user2')
+
+        when:
+
+        authenticator.onUserInvalidation(new UserDisabledEvent('user1'))
+        def newUser1 = authenticate('user1')
+        def cachedUser2 = authenticate('user2')
+
+        then:
+
+        1 * authenticationManager.authenticate(_ as SystemAuthenticationToken) >> authenticated('user1')
+        !newUser1.is(user1)
+        cachedUser2.is(user2)
+    }
+
+    def "cached authentication is dropped when the password is changed"() {
+        given:
+
+        authenticationManager.authenticate(_ as SystemAuthenticationToken) >>>
+                [authenticated('user1'), authenticated('user2')]
+        def user1 = authenticate('user1')
+        def user2 = authenticate('user2')
+
+        when:
+
+        authenticator.onUserPasswordChanged(new UserPasswordChangedEvent(['user1': '{noop}new']))
+        def newUser1 = authenticate('user1')
+        def cachedUser2 = authenticate('user2')
+
+        then:
+
+        1 * authenticationManager.authenticate(_ as SystemAuthenticationToken) >> authenticated('user1')
+        !newUser1.is(user1)
+        cachedUser2.is(user2)
+    }
+
+    def "authentications are not cached with zero TTL"() {
+        given:
+
+        properties.systemAuthenticationCacheTtl = Duration.ZERO
+        authenticator = new SystemAuthenticatorImpl(authenticationManager, properties, new SimpleMeterRegistry())
+
+        when:
+
+        authenticate('user1')
+        authenticate('user1')
+
+        then:
+
+        2 * authenticationManager.authenticate(_ as SystemAuthenticationToken) >> authenticated('user1')
+    }
+
+    private Authentication authenticate(String login) {
+        def authentication = authenticator.begin(login)
+        authenticator.end()
+        authentication
+    }
+
+    private static Authentication authenticated(String username) {
+        new UsernamePasswordAuthenticationToken(username, null, Collections.emptyList())
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package brute_force_protection
+
+import io.jmix.security.check.protection.BruteForceProtectionProperties
+import io.jmix.security.check.protection.InMemoryBruteForceCounterStore
+import io.jmix.security.check.protection.SketchBruteForceCounterStore
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class InMemoryBruteForceCounterStoreTest extends Specification {
+
+    static final Duration WINDOW = Duration.ofMinutes(10)
+
+    InMemoryBruteForceCounterStore store
+
+    def setup() {
+        def properties = new BruteForceProtectionProperties(true, WINDOW, 5, 0, 0, 1000,
+                'sec_InMemoryBruteForceCounterStore', '', 65536, 4)
+        def overflowStore = new SketchBruteForceCounterStore()
+        overflowStore.@properties = properties
+        overflowStore.init()
+
+        store = new InMemoryBruteForceCounterStore()
+        store.@properties = properties
+        store.@overflowStore = overflowStore
+    }
+
+    def "concurrent attempts are not lost"() {
+        given:
+
+        def threads = 8
+        def attemptsPerThread = 10000
+        def executor = Executors.newFixedThreadPool(threads)
+        def start = new CountDownLatch(1)
+
+        when:
+
+        threads.times {
+            executor.submit {
+                start.await()
+                attemptsPerThread.times { store.increment('p|admin|10.0.0.1', WINDOW) }
+            }
+        }
+        start.countDown()
+        executor.shutdown()
+        executor.awaitTermination(1, TimeUnit.MINUTES)
+
+        then:
+
+        store.getCount('p|admin|10.0.0.1', WINDOW) == threads * attemptsPerThread
+    }
+
+    def "attempts are forgotten on reset"() {
+        when:
+
+        3.times { store.increment('p|admin|10.0.0.1', WINDOW) }
+        store.reset('p|admin|10.0.0.1')
+
+        then:
+
+        store.getCount('p|admin|10.0.0.1', WINDOW) == 0
+    }
+
+    def "flood of distinct keys does not reset the counter of an attacked account"() {
+        given:
+
+        3.times { store.increment('p|admin|10.0.0.1', WINDOW) }
+
+        when:
+
+        100000.times { store.increment("p|${UUID.randomUUID()}|10.0.0.2".toString(), WINDOW) }
+        2.times { store.increment('p|admin|10.0.0.1', WINDOW) }
+
+        then:
+
+        store.counters.size() <= 1000
+        store.getCount('p|admin|10.0.0.1', WINDOW) == 5
+
+        and: 'aggregate keys which could not be tracked are still counted'
+
+        store.increment('i|10.0.0.3', WINDOW) >= 1
+        store.getCount('i|10.0.0.3', WINDOW) < 5
+    }
+
+    def "credential stuffing flood does not block a fresh pair"() {
+        when:
+
+        1000000.times { i ->
+            def ip = "10.${(i >> 16) & 0xff}.${(i >> 8) & 0xff}.${i & 0xff}"
+            store.increment("p|user${i}|${ip}".toString(), WINDOW)
+            store.increment("i|${ip}".toString(), WINDOW)
+        }
+
+        then: 'untracked pairs are not answered from the saturated overflow sketch'
+
+        store.counters.size() <= 1000
+        store.getCount('p|alice|192.168.1.1', WINDOW) == 0
+        store.increment('p|alice|192.168.1.1', WINDOW) < 5
+        store.getCount('p|alice|192.168.1.1', WINDOW) < 5
+    }
+}
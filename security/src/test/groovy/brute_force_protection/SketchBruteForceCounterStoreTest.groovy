@@ -0,0 +1,126 @@
+/*
+ * Copyright 2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package brute_force_protection
+
+import io.jmix.security.check.protection.BruteForceProtectionProperties
+import io.jmix.security.check.protection.SketchBruteForceCounterStore
+import spock.lang.Specification
+
+import java.time.Duration
+
+class SketchBruteForceCounterStoreTest extends Specification {
+
+    static final Duration WINDOW = Duration.ofMinutes(10)
+
+    SketchBruteForceCounterStore store
+
+    def setup() {
+        def properties = new BruteForceProtectionProperties(true, WINDOW, 5, 0, 0, 100000,
+                'sec_InMemoryBruteForceCounterStore', 'sec_SketchBruteForceCounterStore', 65536, 4)
+        store = new SketchBruteForceCounterStore()
+        store.@properties = properties
+        store.init()
+    }
+
+    def "attempts are never underestimated"() {
+        when:
+
+        5.times { store.increment('p|admin|10.0.0.1', WINDOW) }
+
+        then:
+
+        store.getCount('p|admin|10.0.0.1', WINDOW) >= 5
+        store.getCount('p|unknown|10.0.0.1', WINDOW) < 5
+    }
+
+    def "credential stuffing with one-off usernames does not block other users"() {
+        given: 'an attack trace of failed logins with random usernames'
+
+        def random = new Random(42)
+        def attackTrace = (1..20000).collect { "p|${UUID.randomUUID()}|10.0.${random.nextInt(256)}.${random.nextInt(256)}".toString() }
+
+        and: 'users who mistyped their passwords once'
+
+        def users = (1..1000).collect { "p|user$it|192.168.0.1".toString() }
+
+        when:
+
+        attackTrace.each { store.increment(it, WINDOW) }
+        users.each { store.increment(it, WINDOW) }
+
+        then:
+
+        users.every { store.getCount(it, WINDOW) < 5 }
+    }
+
+    def "reset clears attempts of the key only"() {
+        given:
+
+        5.times { store.increment('u|admin', WINDOW) }
+        3.times { store.increment('u|user1', WINDOW) }
+
+        when:
+
+        store.reset('u|admin')
+
+        then:
+
+        store.getCount('u|admin', WINDOW) == 0
+        store.getCount('u|user1', WINDOW) == 3
+
+        when:
+
+        store.increment('u|admin', WINDOW)
+
+        then:
+
+        store.getCount('u|admin', WINDOW) == 1
+    }
+
+    def "concurrent attempts of a key are not lost"() {
+        when:
+
+        def threads = (1..8).collect {
+            Thread.start { 10000.times { store.increment('i|10.0.0.1', WINDOW) } }
+        }
+        threads*.join()
+
+        then:
+
+        store.getCount('i|10.0.0.1', WINDOW) == 80000
+    }
+
+    def "flood of attempts from a botnet blocks its addresses only"() {
+        given: 'one million failed logins from 2000 addresses'
+
+        def botnet = (1..2000).collect { "i|10.0.${it >> 8}.${it & 255}".toString() }
+
+        and: 'addresses of users who mistyped their passwords'
+
+        def users = (1..1000).collect { "i|192.168.${it >> 8}.${it & 255}".toString() }
+
+        when:
+
+        500.times { botnet.each { store.increment(it, WINDOW) } }
+        users.each { user -> 2.times { store.increment(user, WINDOW) } }
+
+        then:
+
+        botnet.every { store.getCount(it, WINDOW) >= 500 }
+        users.count { store.getCount(it, WINDOW) >= 10 } == 0
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package user_repository
+
+import io.jmix.security.SecurityProperties
+import io.jmix.security.user.CompositeUserRepository
+import io.jmix.security.user.UserRepository
+import io.jmix.security.user.event.UserDisabledEvent
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.security.core.userdetails.User
+import org.springframework.security.core.userdetails.UserDetails
+import org.springframework.security.core.userdetails.UsernameNotFoundException
+import spock.lang.Specification
+
+import java.time.Duration
+
+class CompositeUserRepositoryTest extends Specification {
+
+    UserRepository first = Mock()
+    UserRepository second = Mock()
+
+    SecurityProperties properties = new SecurityProperties()
+
+    CompositeUserRepository repository
+
+    def setup() {
+        properties.userRepositoryRoutingCacheTtl = Duration.ofMinutes(1)
+        properties.userRepositoryNotFoundCacheTtl = Duration.ofMinutes(1)
+    }
+
+    def cleanup() {
+        repository?.shutdown()
+    }
+
+    def "user is loaded from the delegate which provided it before"() {
+        given:
+
+        createRepository()
+        def user2 = user('user2')
+
+        when:
+
+        def loaded = repository.loadUserByUsername('user2')
+
+        then:
+
+        1 * first.loadUserByUsername('user2') >> { throw new UsernameNotFoundException('user2') }
+        1 * second.loadUserByUsername('user2') >> user2
+        loaded.is(user2)
+
+        when:
+
+        def reloaded = repository.loadUserByUsername('user2')
+
+        then:
+
+        0 * first.loadUserByUsername(_)
+        1 * second.loadUserByUsername('user2') >> user2
+        reloaded.is(user2)
+    }
+
+    def "delegates are asked in order if routing is disabled"() {
+        given:
+
+        properties.userRepositoryRoutingCacheTtl = Duration.ZERO
+        createRepository()
+
+        when:
+
+        repository.loadUserByUsername('user2')
+        repository.loadUserByUsername('user2')
+
+        then:
+
+        2 * first.loadUserByUsername('user2') >> { throw new UsernameNotFoundException('user2') }
+        2 * second.loadUserByUsername('user2') >> user('user2')
+    }
+
+    def "user moved to another delegate is found again"() {
+        given:
+
+        createRepository()
+        first.loadUserByUsername('user1') >> user('user1')
+        repository.loadUserByUsername('user1')
+
+        when:
+
+        def loaded = repository.loadUserByUsername('user1')
+
+        then:
+
+        1 * first.loadUserByUsername('user1') >> { throw new UsernameNotFoundException('user1') }
+        1 * second.loadUserByUsername('user1') >> user('user1')
+        loaded.username == 'user1'
+
+        when:
+
+        repository.loadUserByUsername('user1')
+
+        then:
+
+        0 * first.loadUserByUsername(_)
+        1 * second.loadUserByUsername('user1') >> user('user1')
+    }
+
+    def "unknown username is remembered"() {
+        given:
+
+        createRepository()
+
+        when:
+
+        repository.loadUserByUsername('ghost')
+
+        then:
+
+        1 * first.loadUserByUsername('ghost') >> { throw new UsernameNotFoundException('ghost') }
+        1 * second.loadUserByUsername('ghost') >> { throw new UsernameNotFoundException('ghost') }
+        thrown(UsernameNotFoundException)
+
+        when:
+
+        repository.loadUserByUsername('ghost')
+
+        then:
+
+        0 * first.loadUserByUsername(_)
+        0 * second.loadUserByUsername(_)
+        thrown(UsernameNotFoundException)
+    }
+
+    def "invalidation event clears the routing and not found caches"() {
+        given:
+
+        createRepository()
+        first.loadUserByUsername(_) >> { String username -> throw new UsernameNotFoundException(username) }
+        second.loadUserByUsername('user2') >> user('user2')
+        second.loadUserByUsername('ghost') >> { throw new UsernameNotFoundException('ghost') }
+        repository.loadUserByUsername('user2')
+        try {
+            repository.loadUserByUsername('ghost')
+        } catch (UsernameNotFoundException ignored) {
+        }
+
+        when:
+
+        repository.onUserInvalidation(new UserDisabledEvent('user2'))
+        repository.onUserInvalidation(new UserDisabledEvent('ghost'))
+        def loaded = repository.loadUserByUsername('user2')
+
+        then:
+
+        1 * first.loadUserByUsername('user2') >> { throw new UsernameNotFoundException('user2') }
+        1 * second.loadUserByUsername('user2') >> user('user2')
+        loaded.username == 'user2'
+
+        when:
+
+        repository.loadUserByUsername('ghost')
+
+        then:
+
+        1 * first.loadUserByUsername('ghost') >> user('ghost')
+        0 * second.loadUserByUsername(_)
+    }
+
+    def "users of all delegates are found"() {
+        given:
+
+        createRepository()
+
+        when:
+
+        def found = repository.getByUsernameLike('user')
+
+        then:
+
+        1 * first.getByUsernameLike('user') >> [user('user1')]
+        1 * second.getByUsernameLike('user') >> [user('user2')]
+        found*.username as Set == ['user1', 'user2'] as Set
+    }
+
+    def "slow delegate is skipped after the search timeout"() {
+        given:
+
+        properties.userRepositorySearchTimeout = Duration.ofMillis(200)
+        createRepository()
+        first.getByUsernameLike('user') >> [user('user1')]
+        second.getByUsernameLike('user') >> {
+            Thread.sleep(10000)
+            [user('user2')]
+        }
+
+        when:
+
+        long start = System.currentTimeMillis()
+        def found = repository.getByUsernameLike('user')
+        long elapsed = System.currentTimeMillis() - start
+
+        then:
+
+        found*.username == ['user1']
+        elapsed < 5000
+    }
+
+    private void createRepository() {
+        repository = new CompositeUserRepository()
+        repository.@userRepositories = [first, second]
+        repository.@securityProperties = properties
+        repository.@meterRegistry = new SimpleMeterRegistry()
+        repository.init()
+    }
+
+    private static UserDetails user(String username) {
+        User.builder()
+                .username(username)
+                .password('{noop}' + username)
+                .authorities(Collections.emptyList())
+                .build()
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2019 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package user_repository
+
+import io.jmix.security.user.InMemoryUserRepository
+import org.springframework.security.core.userdetails.User
+import org.springframework.security.core.userdetails.UserDetails
+import spock.lang.Specification
+
+class InMemoryUserRepositoryTest extends Specification {
+
+    InMemoryUserRepository repository
+
+    def setup() {
+        repository = new InMemoryUserRepository()
+        ['mary', 'admin', 'john.smith', 'anna.smithson', 'smith'].each { repository.addUser(user(it)) }
+    }
+
+    def "substring shorter than a trigram is searched in all usernames"() {
+        expect:
+
+        usernames(repository.getByUsernameLike('')) == ['admin', 'anna.smithson', 'john.smith', 'mary', 'smith']
+        usernames(repository.getByUsernameLike('m')) == ['admin', 'anna.smithson', 'john.smith', 'mary', 'smith']
+        usernames(repository.getByUsernameLike('ar')) == ['mary']
+        repository.getByUsernameLike('zz').isEmpty()
+    }
+
+    def "substring of a trigram or longer is searched by the trigram index"() {
+        expect:
+
+        usernames(repository.getByUsernameLike('smi')) == ['anna.smithson', 'john.smith', 'smith']
+        usernames(repository.getByUsernameLike('smithson')) == ['anna.smithson']
+        usernames(repository.getByUsernameLike('n.smith')) == ['john.smith']
+        usernames(repository.getByUsernameLike('admin')) == ['admin']
+        repository.getByUsernameLike('smithx').isEmpty()
+        repository.getByUsernameLike('xyz').isEmpty()
+    }
+
+    def "username which contains all trigrams but not the substring is not found"() {
+        given:
+
+        repository.addUser(user('abcxbcd'))
+
+        expect:
+
+        repository.getByUsernameLike('abcd').isEmpty()
+        usernames(repository.getByUsernameLike('bcd')) == ['abcxbcd']
+    }
+
+    def "user with the same username is replaced"() {
+        when:
+
+        repository.addUser(User.builder()
+                .username('mary')
+                .password('{noop}new')
+                .authorities(Collections.emptyList())
+                .build())
+
+        then:
+
+        repository.loadUserByUsername('mary').password == '{noop}new'
+        repository.getByUsernameLike('mar').size() == 1
+        repository.getByUsernameLike('mar')[0].password == '{noop}new'
+        repository.getByUsernamePrefix('mary').size() == 1
+    }
+
+    def "removed user is removed from the trigram index"() {
+        when:
+
+        repository.removeUser(user('john.smith'))
+
+        then:
+
+        usernames(repository.getByUsernameLike('smith')) == ['anna.smithson', 'smith']
+        repository.getByUsernameLike('joh').isEmpty()
+        !repository.usernamesByGram.containsKey('joh')
+        !repository.usernamesByGram.values().any { it.contains('john.smith') }
+        repository.usernamesByGram['smi'] == ['anna.smithson', 'smith'] as Set
+
+        when:
+
+        repository.removeUser(user('unknown'))
+
+        then:
+
+        repository.getByUsernameLike('').size() == 4
+    }
+
+    def "prefix search returns users sorted by username"() {
+        expect:
+
+        usernames(repository.getByUsernamePrefix('')) == ['admin', 'anna.smithson', 'john.smith', 'mary', 'smith']
+        usernames(repository.getByUsernamePrefix('a')) == ['admin', 'anna.smithson']
+        usernames(repository.getByUsernamePrefix('smith')) == ['smith']
+        repository.getByUsernamePrefix('x').isEmpty()
+    }
+
+    private static UserDetails user(String username) {
+        User.builder()
+                .username(username)
+                .password('{noop}' + username)
+                .authorities(Collections.emptyList())
+                .build()
+    }
+
+    private static List<String> usernames(List<? extends UserDetails> users) {
+        users*.username
+    }
+}